@@ -4,14 +4,15 @@ import javax.inject.Inject;
 import javax.inject.Singleton;
 import java.io.IOException;
 import java.nio.file.Files;
-import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -30,30 +31,54 @@ public class Actions {
     @Inject
     private IoTest ioTest;
 
+    @Inject
+    private ZeroScanner zeroScanner;
+
+    @Inject
+    private ReadAhead readAhead;
+
+    @Inject
+    private StructureProbe structureProbe;
+
+    @Inject
+    private FileScanner fileScanner;
+
+    @Inject
+    private DirectoryIndex directoryIndex;
+
+    @Inject
+    private Watcher watcher;
+
     public Statistics organize(String id, Path sourceRoot, Path targetRoot) {
         logger.info(id, sourceRoot, "->", targetRoot);
         logger.resetStatistics(id);
         marker.reset();
 
-        try (Stream<Path> walk = Files.walk(sourceRoot)) {
-            walk.filter(Files::isRegularFile).forEach(source -> {
+        if (directoryIndex.isEnabled() && sourceRoot.equals(targetRoot)) {
+            reorganizeByDirectory(id, sourceRoot);
+        } else {
+            try (Stream<FileRecord> files = readAhead.ahead(fileScanner.files(sourceRoot).filter(record -> !isInPlace(record, targetRoot)), FileRecord::getPath)) {
+                files.forEach(record -> organizeFile(record, targetRoot));
+            } catch (IOException e) {
+                logger.error("error", e, "Directory processing error");
+            }
+        }
+
+        logger.info(id, "time", marker.getElapsed() / 1000, "seconds");
+        logger.label("");
+        return logger.getStatistics();
+    }
+
+    // organizes each new file in sources once it settles; blocks until watcher is stopped
+    public Statistics watch(String id, List<Path> sourceRoots, Path targetRoot) {
+        logger.info(id, sourceRoots, "->", targetRoot, ":", "settle", watcher.getSettle(), "ms");
+        logger.resetStatistics(id);
+        marker.reset();
+
+        try {
+            watcher.watch(sourceRoots, file -> {
                 try {
-                    marker.mark(source);
-                    Path target = ioService.buildMatchingTarget(source, targetRoot);
-                    //noinspection StatementWithEmptyBody
-                    if (target == null) {
-                        // file is not matching target pattern or has no exif date
-                    } else if (ioService.isSameFile(source, target)) {
-                        // file is already in target location
-                        logger.infoStat("ok location", source);
-                    } else if (ioService.haveSameContent(source, target)) {
-                        // duplicate detected
-                        logger.infoStat("duplicate", source, "=", target);
-                        ioService.delete(source);
-                    } else {
-                        // just move to target
-                        ioService.move(source, target);
-                    }
+                    organizeFile(FileRecord.of(file), targetRoot);
                 } catch (IOException e) {
                     logger.error("error", e, "File processing error");
                 }
@@ -67,52 +92,118 @@ public class Actions {
         return logger.getStatistics();
     }
 
+    // directories in which all files were in target location in the last run and which have not changed since are skipped
+    // a directory is indexed only if all its files were already in place, so pending moves, files without date
+    // and errors are processed again by the next run
+    private void reorganizeByDirectory(String id, Path root) {
+        String key = indexKey(id);
+        try {
+            fileScanner.filesByDirectory(root).forEach((directory, files) -> {
+                marker.mark(directory);
+                DirectoryIndex.Summary summary = summarize(directory, files);
+                if (directoryIndex.getResults(key, directory, summary) != null) {
+                    files.forEach(record -> logger.stat("unchanged", record));
+                    return;
+                }
+                boolean[] inPlace = {true};
+                try (Stream<FileRecord> records = readAhead.ahead(files.stream().filter(record -> !isInPlace(record, root)), FileRecord::getPath)) {
+                    records.forEach(record -> inPlace[0] &= organizeFile(record, root));
+                }
+                if (inPlace[0]) {
+                    index(key, directory, summary, List.of());
+                } else {
+                    directoryIndex.remove(key, directory);
+                }
+            });
+        } catch (IOException e) {
+            logger.error("error", e, "Directory processing error");
+        }
+    }
+
+    // canonical name in matching yyyy-MM directory of target root; such files are not resolved nor read ahead
+    private boolean isInPlace(FileRecord record, Path targetRoot) {
+        Path parent = record.getPath().getParent();
+        if (parent != null && targetRoot.equals(parent.getParent()) && ioService.isCanonical(record.getPath())) {
+            marker.mark(record.getPath());
+            logger.stat("total", record);
+            logger.infoStat("ok location", record);
+            return true;
+        }
+        return false;
+    }
+
+    // returns true only if the file is already in target location
+    private boolean organizeFile(FileRecord record, Path targetRoot) {
+        Path source = record.getPath();
+        try {
+            marker.mark(source);
+            Path target = ioService.buildMatchingTarget(record, targetRoot);
+            //noinspection StatementWithEmptyBody
+            if (target == null) {
+                // file is not matching target pattern or has no exif date
+            } else if (ioService.isSameFile(source, target)) {
+                // file is already in target location
+                logger.infoStat("ok location", source);
+                return true;
+            } else if (ioService.haveSameTargetContent(source, target)) {
+                // duplicate detected
+                logger.infoStat("duplicate", source, "=", target);
+                ioService.delete(source, target);
+            } else {
+                // just move to target
+                ioService.move(source, target);
+            }
+        } catch (IOException e) {
+            logger.error("error", e, "File processing error");
+        }
+        return false;
+    }
+
     public Statistics removeDuplicatesPerDirectory(String id, Path root) {
         logger.info(id, root);
         logger.resetStatistics(id);
         marker.reset();
 
-        try (Stream<Path> walk = Files.walk(root)) {
-            walk.filter(Files::isDirectory).forEach(directory -> {
-                try {
-                    marker.mark(directory);
-                    int[] count = new int[]{0};
-                    Map<Long, List<Path>> sizeToPaths = new HashMap<>();
-                    try (Stream<Path> list = Files.list(directory)) {
-                        list
-                                .filter(f -> Files.isRegularFile(f, LinkOption.NOFOLLOW_LINKS))
-                                .forEach(path -> {
-                                    count[0]++;
-                                    long size = ioService.size(path);
-                                    List<Path> paths = sizeToPaths.computeIfAbsent(size, k -> new ArrayList<>());
-                                    paths.add(path);
-                                });
-                    }
-                    logger.info("directory", directory, ":", count[0], "files");
-
-                    sizeToPaths.entrySet().stream()
-                            .filter(e -> e.getKey() > 1024)
-                            .filter(e -> e.getValue().size() > 1)
-                            .map(Map.Entry::getValue)
-                            .forEach(paths -> {
-                                for (int a = 0; a < paths.size(); a++) {
-                                    for (int b = a + 1; b < paths.size(); b++) {
-                                        Path file = paths.get(a);
-                                        Path copy = paths.get(b);
-                                        try {
-                                            if (!ioService.isSameFile(file, copy) && ioService.haveSameContent(file, copy)) {
-                                                logger.infoStat("duplicate", file, "=", copy);
-                                                ioService.deleteOne(file, copy);
-                                            }
-                                        } catch (IOException e) {
-                                            logger.error("error", e, file, ":", copy);
+        String key = indexKey(id);
+        try {
+            fileScanner.filesByDirectory(root).forEach((directory, files) -> {
+                marker.mark(directory);
+                DirectoryIndex.Summary summary = summarize(directory, files);
+                List<List<String>> previous = directoryIndex.getResults(key, directory, summary);
+                if (previous != null) {
+                    // duplicates found in the last run are only logged again
+                    logger.info("directory", directory, ":", files.size(), "files", "unchanged");
+                    replay(directory, previous);
+                    return;
+                }
+
+                Map<Long, List<Path>> sizeToPaths = new HashMap<>();
+                for (FileRecord file : files) {
+                    sizeToPaths.computeIfAbsent(file.getSize(), k -> new ArrayList<>()).add(file.getPath());
+                }
+                logger.info("directory", directory, ":", files.size(), "files");
+
+                List<List<String>> results = new ArrayList<>();
+                sizeToPaths.entrySet().stream()
+                        .filter(e -> e.getKey() > 1024)
+                        .filter(e -> e.getValue().size() > 1)
+                        .map(Map.Entry::getValue)
+                        .forEach(paths -> {
+                            try {
+                                for (List<Path> same : ioService.haveSameContent(paths)) {
+                                    Path retained = ioService.retainOne(same);
+                                    for (Path copy : same) {
+                                        if (!copy.equals(retained)) {
+                                            logger.infoStat("duplicate", retained, "=", copy);
+                                            results.add(List.of("duplicate", retained.getFileName().toString(), "=", copy.toString()));
                                         }
                                     }
                                 }
-                            });
-                } catch (IOException e) {
-                    logger.error("error", e, "File processing error");
-                }
+                            } catch (IOException e) {
+                                logger.error("error", e, paths);
+                            }
+                        });
+                index(key, directory, summary, results);
             });
         } catch (IOException e) {
             logger.error("error", e, "Directory processing error");
@@ -128,27 +219,25 @@ public class Actions {
         logger.resetStatistics(id);
         marker.reset();
 
-        byte[] buffer = new byte[bufferSize];
-
-        try (Stream<Path> walk = Files.walk(root)) {
-            walk
-                    .filter(Files::isRegularFile)
-                    .peek(marker::mark)
-                    .forEach(file -> {
+        try (Stream<FileRecord> records = fileScanner.files(root)) {
+            Stream<Path> files = records.map(FileRecord::getPath).peek(marker::mark);
+            if (structureProbe.isEnabled()) {
+                files = files.filter(this::needsZeroScan);
+            }
+            zeroScanner.scan(files, bufferSize, (file, result) -> {
+                if (result.getBlocks() > 0) {
+                    long bytes = result.getZeroBytes();
+                    long totalSize = result.getSize();
+                    int percentage = (int) (100 * bytes / totalSize);
+                    if (percentage > 0) {
                         try {
-                            int count = ioService.countZeroBlocks(file, buffer);
-                            if (count > 0) {
-                                int bytes = count * bufferSize;
-                                long totalSize = ioService.size(file);
-                                int percentage = (int) (100 * bytes / totalSize);
-                                if (percentage > 0) {
-                                    logger.infoStat("empty blocks", file, ":", bytes, "/", totalSize, "bytes", percentage, "%");
-                                }
-                            }
+                            logger.infoStat("empty blocks", file, ":", bytes, "/", totalSize, "bytes", percentage, "%", "at", result.formatRuns(16));
                         } catch (IOException e) {
                             logger.error("error", e, "File processing error");
                         }
-                    });
+                    }
+                }
+            });
         } catch (IOException e) {
             logger.error("error", e, "Directory processing error");
         }
@@ -158,23 +247,34 @@ public class Actions {
         return logger.getStatistics();
     }
 
+    // only files with broken structure or of unknown format are scanned for zero blocks
+    private boolean needsZeroScan(Path file) {
+        try {
+            StructureProbe.Result result = structureProbe.probe(file);
+            switch (result.getStatus()) {
+                case OK:
+                    logger.stat("probe ok", file);
+                    return false;
+                case SUSPICIOUS:
+                    logger.infoStat("suspicious", file, ":", result.getReason());
+                    return true;
+                default:
+                    logger.stat("probe unknown", file);
+                    return true;
+            }
+        } catch (IOException e) {
+            logger.error("error", e, "File processing error");
+            return false;
+        }
+    }
+
     public Statistics removeEmpty(String id, Path targetRoot) {
         logger.info(id, targetRoot);
         logger.resetStatistics(id);
         marker.reset();
 
-        try (Stream<Path> walk = Files.walk(targetRoot)) {
-            walk
-                    .filter(Files::isDirectory)
-                    .peek(d -> marker.mark(d))
-                    .forEach(directory -> {
-                        try {
-                            marker.mark(directory);
-                            ioService.deleteEmpty(targetRoot, directory);
-                        } catch (IOException e) {
-                            logger.error("error", e, "Directory processing error");
-                        }
-                    });
+        try {
+            ioService.deleteEmptyTree(targetRoot, marker::mark);
         } catch (IOException e) {
             logger.error("error", e, "Directory processing error");
         }
@@ -184,16 +284,39 @@ public class Actions {
         return logger.getStatistics();
     }
 
+    // checks only directories from which files were moved or deleted by this run, and their parents
+    public Statistics removeVacated(String id, Path root) {
+        logger.info(id, root);
+        logger.resetStatistics(id);
+        marker.reset();
+
+        List<Path> directories = ioService.takeVacated(root);
+        logger.info("count", "Found", directories.size(), "vacated directories");
+        for (Path directory : directories) {
+            try {
+                marker.mark(directory);
+                ioService.deleteEmpty(root, directory);
+            } catch (IOException e) {
+                logger.error("error", e, "Directory processing error");
+            }
+        }
+
+        logger.info(id, "time", marker.getElapsed() / 1000, "seconds");
+        logger.label("");
+        return logger.getStatistics();
+    }
+
     public Statistics synchronize(String id, Path sourceRoot, Path targetRoot) {
         logger.info(id, sourceRoot, "=", targetRoot);
         logger.resetStatistics(id);
         marker.reset();
 
-        try (Stream<Path> walk = Files.walk(sourceRoot)) {
-            walk.filter(Files::isRegularFile).forEach(source -> {
+        try (Stream<FileRecord> files = readAhead.ahead(fileScanner.files(sourceRoot), FileRecord::getPath)) {
+            files.forEach(record -> {
+                Path source = record.getPath();
                 try {
                     marker.mark(source);
-                    logger.stat("total", source);
+                    logger.stat("total", record);
 
                     Path target = ioService.buildCopyTarget(source, sourceRoot, targetRoot);
                     if (ioService.isSameFile(source, target)) {
@@ -228,45 +351,76 @@ public class Actions {
         logger.resetStatistics(id);
         marker.reset();
 
-        try {
+        // month of file creation by analyze and name resolver status
+        Histogram histogram = new Histogram("month", "failure", "partial match", "all match");
+        int[] directories = {0};
+        try (Stream<Map.Entry<Path, List<FileRecord>>> stream = fileScanner.streamFilesByDirectory(path)) {
+            stream.forEach(entry -> {
+                directories[0]++;
+                analyzeDirectory(id, entry.getKey(), entry.getValue(), histogram);
+            });
+        } catch (IOException e) {
+            logger.error("error", e, "File processing error");
+        }
+
+        logger.info("count", "Found", directories[0], "directories");
+        if (histogram.hasData()) {
+            histogram.format().forEach(line -> logger.info("histogram", line));
+        }
+        logger.info(id, "time", marker.getElapsed() / 1000, "seconds");
+        logger.label("");
+        return logger.getStatistics();
+    }
+
+    // each result is status, file name, name resolver status and messages
+    private void analyzeDirectory(String id, Path directory, List<FileRecord> files, Histogram histogram) {
+        files.sort(Comparator.comparing(FileRecord::getPath));
+        DirectoryIndex.Summary summary = summarize(directory, files);
+        List<List<String>> results = directoryIndex.getResults(id, directory, summary);
+        boolean unchanged = results != null;
+        if (!unchanged) {
+            results = new ArrayList<>();
             Path target = Paths.get("");
-            List<Path> directories;
-            try (Stream<Path> walk = Files.walk(path)) {
-                directories = walk.filter(Files::isDirectory).sorted().collect(Collectors.toList());
-            }
-            logger.info("count", "Found", directories.size(), "directories");
-            for (Path directory : directories) {
-                List<Path> files;
-                try (Stream<Path> list = Files.list(directory)) {
-                    files = list
-                            .filter(Files::isRegularFile)
-                            .peek(marker::mark)
-                            .sorted().collect(Collectors.toList());
-                }
-                for (Path file : files) {
-                    marker.mark(file);
-                    BasicFileAttributes attr = Files.readAttributes(file, BasicFileAttributes.class);
-                    Path match = ioService.buildMatchingTarget(file, target);
-                    String fileDateTime = attr.creationTime().toString().replaceAll("[TZ]", " ").trim();
-                    if (match == null) {
-                        logger.infoStat("failure", file, ":", "unknown", "|", fileDateTime);
+            for (FileRecord record : files) {
+                Path file = record.getPath();
+                marker.mark(file);
+                String fileDateTime = record.getCreationTime().toString().replaceAll("[TZ]", " ").trim();
+                try {
+                    NameResolver.Result resolved = ioService.resolve(record);
+                    if (resolved == null) {
+                        String status = ioService.isSupported(file) ? "no match" : "unknown";
+                        results.add(List.of("failure", file.getFileName().toString(), status, ":", "unknown", "|", fileDateTime));
                     } else {
+                        Path match = resolved.resolve(target);
                         String fileDate = fileDateTime.substring(0, 7);
-                        if (match.getParent().getFileName().toString().equals(fileDate)) {
-                            logger.infoStat("all match", file, ":", match, "|", fileDateTime);
-                        } else {
-                            logger.infoStat("partial match", file, ":", match, "|", fileDateTime);
-                        }
+                        String status = match.getParent().getFileName().toString().equals(fileDate) ? "all match" : "partial match";
+                        results.add(List.of(status, file.getFileName().toString(), resolved.getStatus(), ":", match.toString(), "|", fileDateTime));
                     }
+                } catch (IOException e) {
+                    logger.error("error", e, "File processing error");
                 }
             }
-        } catch (IOException e) {
-            logger.error("error", e, "File processing error");
+            if (summary != null) {
+                directoryIndex.put(id, directory, summary, results);
+            }
         }
 
-        logger.info(id, "time", marker.getElapsed() / 1000, "seconds");
-        logger.label("");
-        return logger.getStatistics();
+        Map<String, FileRecord> records = files.stream().collect(Collectors.toMap(f -> f.getPath().getFileName().toString(), f -> f));
+        for (List<String> result : results) {
+            FileRecord record = records.get(result.get(1));
+            String month = result.get(result.size() - 1).substring(0, 7);
+            histogram.add(month, result.get(0));
+            histogram.add(month, result.get(2));
+            if (unchanged) {
+                marker.mark(record.getPath());
+            }
+            Object[] messages = result.subList(3, result.size()).toArray();
+            if (result.get(0).equals("all match")) {
+                logger.debugStat(result.get(0), record, messages);
+            } else {
+                logger.infoStat(result.get(0), record, messages);
+            }
+        }
     }
 
     public Statistics findCopies(String id, Path source, Path target) {
@@ -277,54 +431,36 @@ public class Actions {
         Map<Long, List<Path>> sizeToPaths = new HashMap<>();
 
         logger.info("target", target);
-        try (Stream<Path> walk = Files.walk(target)) {
-            walk.filter(Files::isDirectory).forEach(directory -> {
-                try {
-                    marker.mark(directory);
-                    int[] count = new int[]{0};
-                    try (Stream<Path> list = Files.list(directory)) {
-                        list
-                                .filter(f -> Files.isRegularFile(f, LinkOption.NOFOLLOW_LINKS))
-                                .forEach(path -> {
-                                    count[0]++;
-                                    marker.mark(path);
-                                    long size = ioService.size(path);
-                                    if (size > 1024) {
-                                        List<Path> paths = sizeToPaths.computeIfAbsent(size, k -> new ArrayList<>());
-                                        paths.add(path);
-                                    }
-                                });
+        try {
+            fileScanner.filesByDirectory(target).forEach((directory, files) -> {
+                marker.mark(directory);
+                for (FileRecord file : files) {
+                    marker.mark(file.getPath());
+                    if (file.getSize() > 1024) {
+                        sizeToPaths.computeIfAbsent(file.getSize(), k -> new ArrayList<>()).add(file.getPath());
                     }
-                    logger.info("directory", directory, ":", count[0], "files");
-                } catch (IOException e) {
-                    logger.error("error", e, "File processing error");
                 }
+                logger.info("directory", directory, ":", files.size(), "files");
             });
         } catch (IOException e) {
             logger.error("error", e, "Directory processing error");
         }
+        sizeToPaths.replaceAll((size, paths) -> ioService.ordered(paths));
 
         logger.info("source", source);
-        try (Stream<Path> walk = Files.walk(source)) {
-            walk.filter(Files::isRegularFile).forEach(sourceFile -> {
+        try (Stream<FileRecord> files = fileScanner.files(source)) {
+            files.forEach(record -> {
+                Path sourceFile = record.getPath();
                 try {
-                    logger.stat("total", sourceFile);
+                    logger.stat("total", record);
 
                     marker.mark(sourceFile);
-                    long size = ioService.size(sourceFile);
-                    List<Path> targetFiles = sizeToPaths.get(size);
-                    boolean unique = true;
-                    if (targetFiles != null) {
-                        for (Path targetFile : targetFiles) {
-                            if (!ioService.isSameFile(sourceFile, targetFile) && ioService.haveSameContent(sourceFile, targetFile)) {
-                                logger.infoStat("duplicate", sourceFile, "=", targetFile);
-                                ioService.delete(sourceFile);
-                                unique = false;
-                                break;
-                            }
-                        }
-                    }
-                    if (unique) {
+                    List<Path> targetFiles = sizeToPaths.get(record.getSize());
+                    Path targetFile = targetFiles == null ? null : ioService.findSameContent(sourceFile, targetFiles);
+                    if (targetFile != null) {
+                        logger.infoStat("duplicate", sourceFile, "=", targetFile);
+                        ioService.delete(sourceFile, targetFile);
+                    } else {
                         logger.infoStat("unique", sourceFile);
                     }
                 } catch (IOException e) {
@@ -340,8 +476,57 @@ public class Actions {
         return logger.getStatistics();
     }
 
+    // null if directory index is disabled
+    private DirectoryIndex.Summary summarize(Path directory, List<FileRecord> files) {
+        if (directoryIndex.isEnabled()) {
+            try {
+                return directoryIndex.summarize(directory, files);
+            } catch (IOException e) {
+                logger.error("error", e, "Directory processing error");
+            }
+        }
+        return null;
+    }
+
+    // runs with and without move or delete are indexed separately; a dry run leaves the directory unchanged
+    // with actions still pending so its entry must not be used by a later run that does perform them
+    private String indexKey(String id) {
+        if (directoryIndex.isEnabled()) {
+            return id + (ioService.isMove() ? "+move" : "") + (ioService.isDelete() ? "+delete" : "");
+        } else {
+            return id;
+        }
+    }
+
+    // results are kept only if the directory was not modified while processing
+    private void index(String id, Path directory, DirectoryIndex.Summary summary, List<List<String>> results) {
+        if (summary != null) {
+            try {
+                if (summary.equals(directoryIndex.summarize(directory))) {
+                    directoryIndex.put(id, directory, summary, results);
+                } else {
+                    directoryIndex.remove(id, directory);
+                }
+            } catch (IOException e) {
+                directoryIndex.remove(id, directory);
+            }
+        }
+    }
+
+    // logs results of the last run; each result is status, file name and messages
+    private void replay(Path directory, List<List<String>> results) {
+        for (List<String> result : results) {
+            try {
+                logger.infoStat(result.get(0), directory.resolve(result.get(1)), result.subList(2, result.size()).toArray());
+            } catch (IOException e) {
+                logger.error("error", e, "File processing error");
+            }
+        }
+    }
+
     public void test(Path root) throws IOException {
         ioTest.test2(root, 128 * 1024 * 1024, 16 * 1024 * 1024);
+        ioTest.testHashes(root, 128 * 1024 * 1024);
     }
 
     public Statistics removeDuplicatesGlobally(String id, Path root) {
@@ -351,15 +536,10 @@ public class Actions {
 
         Map<Long, List<Path>> sizeToPaths = new HashMap<>();
 
-        try (Stream<Path> walk = Files.walk(root)) {
-            walk.filter(Files::isRegularFile).forEach(file -> {
-                try {
-                    marker.mark(file);
-                    List<Path> paths = sizeToPaths.computeIfAbsent(Files.size(file), k -> new ArrayList<>());
-                    paths.add(file);
-                } catch (IOException e) {
-                    logger.error("error", e, "File processing error");
-                }
+        try (Stream<FileRecord> files = fileScanner.files(root)) {
+            files.forEach(record -> {
+                marker.mark(record.getPath());
+                sizeToPaths.computeIfAbsent(record.getSize(), k -> new ArrayList<>()).add(record.getPath());
             });
         } catch (IOException e) {
             logger.error("error", e, "Directory processing error");
@@ -367,26 +547,30 @@ public class Actions {
 
         logger.info("scan completed", "found", sizeToPaths.size(), "unique file sizes");
 
-        sizeToPaths.entrySet().stream()
+        List<List<Path>> sizeGroups = sizeToPaths.entrySet().stream()
                 .filter(e -> e.getKey() > 1024)
                 .filter(e -> e.getValue().size() > 1)
                 .map(Map.Entry::getValue)
-                .forEach(paths -> {
-                    try {
-                        List<Path> same = ioService.haveSameContent(paths);
-                        List<Path> different = new ArrayList<>(paths);
-                        different.removeAll(same);
-
-                        if (!same.isEmpty()) {
-                            ioService.retainOne(same);
-                        }
-                        for (Path path : different) {
-                            logger.infoStat("different", path);
-                        }
-                    } catch (IOException e) {
-                        logger.error("error", e, "Delete error");
-                    }
-                });
+                .collect(Collectors.toList());
+
+        try {
+            List<List<Path>> groups = ioService.groupBySameContent(sizeGroups);
+            Set<Path> different = sizeGroups.stream().flatMap(List::stream).collect(Collectors.toCollection(LinkedHashSet::new));
+
+            for (List<Path> same : groups) {
+                different.removeAll(same);
+                try {
+                    ioService.retainOne(same);
+                } catch (IOException e) {
+                    logger.error("error", e, "Delete error");
+                }
+            }
+            for (Path path : different) {
+                logger.infoStat("different", path);
+            }
+        } catch (IOException e) {
+            logger.error("error", e, "Compare error");
+        }
 
         logger.info(id, "time", marker.getElapsed() / 1000, "seconds");
         logger.label("");
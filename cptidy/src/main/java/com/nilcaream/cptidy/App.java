@@ -9,6 +9,11 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.UncheckedIOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -47,6 +52,12 @@ public class App {
     @Option(alternative = "synchronize")
     private boolean synchronize;
 
+    @Option(alternative = "watch")
+    private boolean watch;
+
+    @Option(alternative = "settle")
+    private int settleSeconds;
+
     @Option(alternative = "no-empty")
     private boolean removeEmpty;
 
@@ -56,12 +67,69 @@ public class App {
     @Option(alternative = "count-zeros")
     private boolean countZeros;
 
+    @Option(alternative = "probe")
+    private boolean probe;
+
     @Option(alternative = "configuration")
     private String configurationFile;
 
     @Option(alternative = "buffer")
     private int bufferSize;
 
+    @Option(alternative = "adaptive")
+    private boolean adaptive;
+
+    @Option(alternative = "threads")
+    private int threads;
+
+    @Option(alternative = "cache")
+    private int cache = -1;
+
+    @Option(alternative = "fused")
+    private boolean fused;
+
+    @Option(alternative = "walkers")
+    private int walkers;
+
+    @Option(alternative = "ordered")
+    private boolean ordered;
+
+    @Option(alternative = "index")
+    private String indexFile;
+
+    @Option(alternative = "files-from")
+    private String filesFrom;
+
+    @Option(alternative = "include")
+    private List<String> includes = emptyList();
+
+    @Option(alternative = "exclude")
+    private List<String> excludes = emptyList();
+
+    @Option(alternative = "prune")
+    private List<String> prunes = emptyList();
+
+    @Option(alternative = "extensions")
+    private List<String> extensions = emptyList();
+
+    @Option(alternative = "min-size")
+    private long minSize;
+
+    @Option(alternative = "max-size")
+    private long maxSize;
+
+    @Option(alternative = "read-ahead")
+    private int readAheadDepth;
+
+    @Option(alternative = "read-ahead-bytes")
+    private long readAheadBytes;
+
+    @Option(alternative = "samples")
+    private int samples;
+
+    @Option(alternative = "sample-size")
+    private int sampleSize;
+
     @Inject
     private IoService ioService;
 
@@ -80,6 +148,45 @@ public class App {
     @Inject
     private FileCompare fileCompare;
 
+    @Inject
+    private HashEngine hashEngine;
+
+    @Inject
+    private DigestCache digestCache;
+
+    @Inject
+    private BufferPool bufferPool;
+
+    @Inject
+    private BufferTuner bufferTuner;
+
+    @Inject
+    private ReadAhead readAhead;
+
+    @Inject
+    private ZeroScanner zeroScanner;
+
+    @Inject
+    private FileAnalyzer fileAnalyzer;
+
+    @Inject
+    private ExifService exifService;
+
+    @Inject
+    private StructureProbe structureProbe;
+
+    @Inject
+    private FileScanner fileScanner;
+
+    @Inject
+    private DirectoryIndex directoryIndex;
+
+    @Inject
+    private Watcher watcher;
+
+    @Inject
+    private ScanFilter scanFilter;
+
     private final List<Statistics> statistics = new ArrayList<>();
 
     public static void main(String[] args) throws IOException {
@@ -101,8 +208,8 @@ public class App {
         logger.info("Arguments", String.join(" ", args));
         logger.info("Sources", hasSource() ? sourceDirectories.stream().map(this::asPath).map(Path::toString).collect(Collectors.joining(" ")) : "");
         logger.info("Target", hasTarget() ? asPath(targetDirectory) : "");
-        logger.info("Options", opt("verbose", verbose), opt("copy", ioService.isCopy()), opt("move", ioService.isMove()), opt("delete", ioService.isDelete()), opt("fast", ioService.isFast()), opt("time", ioService.isTime()));
-        logger.info("Actions", opt("analyze", analyze), opt("organize", organize), opt("reorganize", reorganize), opt("no-duplicates", removeDuplicates), opt("synchronize", synchronize), opt("no-empty", removeEmpty));
+        logger.info("Options", opt("verbose", verbose), opt("copy", ioService.isCopy()), opt("move", ioService.isMove()), opt("delete", ioService.isDelete()), opt("fast", ioService.isFast()), opt("verify", ioService.isVerify()), opt("time", ioService.isTime()));
+        logger.info("Actions", opt("analyze", analyze), opt("organize", organize), opt("reorganize", reorganize), opt("no-duplicates", removeDuplicates), opt("synchronize", synchronize), opt("no-empty", removeEmpty), opt("watch", watch));
 
         marker.setPeriod(5000);
 
@@ -121,7 +228,70 @@ public class App {
 
         if (bufferSize > 0) {
             fileCompare.updateBufferSize(bufferSize);
+            hashEngine.setBufferSize(bufferSize);
+        }
+        bufferTuner.setEnabled(adaptive);
+        if (samples > 0) {
+            fileCompare.setSamples(samples);
+        }
+        if (sampleSize > 0) {
+            fileCompare.setSampleSize(sampleSize);
+        }
+        if (threads > 0) {
+            hashEngine.setThreads(threads);
+            zeroScanner.setThreads(threads);
+        }
+        if (fused && cache < 0) {
+            // analyzed digests are used through the digest cache, so fused analysis implies it unless set explicitly
+            cache = 10000;
+        }
+        if (cache >= 0) {
+            digestCache.setCapacity(cache);
+            fileAnalyzer.setCapacity(cache);
+            exifService.setCapacity(cache);
+        }
+        fileAnalyzer.setEnabled(fused && digestCache.isEnabled());
+        exifService.setFused(fileAnalyzer.isEnabled());
+        structureProbe.setEnabled(probe);
+        if (walkers > 0) {
+            fileScanner.setWalkers(walkers);
+        }
+        fileScanner.setOrdered(ordered);
+        if (settleSeconds > 0) {
+            watcher.setSettle(settleSeconds * 1000L);
         }
+        scanFilter.setIncludes(includes);
+        scanFilter.setExcludes(excludes);
+        scanFilter.setPrunes(prunes);
+        scanFilter.setExtensions(extensions);
+        scanFilter.setMinSize(minSize);
+        if (maxSize > 0) {
+            scanFilter.setMaxSize(maxSize);
+        }
+        if (filesFrom != null && !filesFrom.isBlank()) {
+            fileScanner.setListed(readFileList(filesFrom));
+        }
+        if (indexFile != null && !indexFile.isBlank()) {
+            directoryIndex.load(Paths.get(indexFile).toAbsolutePath());
+        }
+        if (readAheadDepth > 0) {
+            readAhead.setDepth(readAheadDepth);
+        }
+        if (readAheadBytes > 0) {
+            readAhead.setBytes(readAheadBytes);
+        }
+        logger.info("Buffer", adaptive ? "adaptive" : fileCompare.getInternalBufferSize());
+        logger.info("Threads", hashEngine.getThreads());
+        logger.info("Walkers", fileScanner.getWalkers(), fileScanner.getWalkers() > 1 && !fileScanner.isOrdered() ? "unordered" : "ordered");
+        logger.info("Read ahead", readAhead.getDepth(), "files");
+        logger.info("Cache", digestCache.isEnabled() ? digestCache.getCapacity() + " digests" : "disabled");
+        logger.info("Files from", fileScanner.isListed() ? filesFrom : "walk");
+        logger.info("Filter", scanFilter.isEnabled() ? scanFilter : "disabled");
+        logger.info("Index", directoryIndex.isEnabled() ? directoryIndex.getPath() : "disabled");
+        logger.info("Fused", fileAnalyzer.isEnabled() ? "digest, exif" : fused ? "disabled, requires cache" : "disabled");
+        logger.info("Compare", CompareMode.of(ioService.getCompare()).getLabel());
+        logger.info("Order", ReadOrder.of(ioService.getOrder()).getLabel());
+        logger.info("Hashes", "quick", HashAlgorithm.of(ioService.getQuickHash()).getLabel(), "full", HashAlgorithm.ofFull(ioService.getHash()).getLabel());
         logger.label("");
     }
 
@@ -150,8 +320,8 @@ public class App {
 
     private void fail() {
         logger.error("no input", "Provide input arguments: --source sourceDirectory --target targetDirectory");
-        logger.error("actions", "--analyze --organize --synchronize --reorganize --no-duplicates --no-empty");
-        logger.error("options", "--copy --move --delete --fast");
+        logger.error("actions", "--analyze --organize --synchronize --reorganize --no-duplicates --no-empty --watch");
+        logger.error("options", "--copy --move --delete --fast --verify --buffer --adaptive --threads --walkers --ordered --read-ahead --read-ahead-bytes --cache --fused --index --files-from --include --exclude --prune --extensions --min-size --max-size --settle --quick-hash --hash --compare --order --samples --sample-size --probe");
         //noinspection ConstantConditions
         try (BufferedReader reader = new BufferedReader(new InputStreamReader(getClass().getResourceAsStream("/manual.txt")))) {
             logger.label("");
@@ -162,6 +332,26 @@ public class App {
         System.exit(1);
     }
 
+    // newline or NUL separated paths from a file or from standard input if "-" is given
+    private List<Path> readFileList(String source) throws IOException {
+        byte[] bytes = source.equals("-") ? System.in.readAllBytes() : Files.readAllBytes(Paths.get(source));
+        String text = new String(bytes, StandardCharsets.UTF_8);
+        String separator = text.indexOf('\0') >= 0 ? "\0" : "\r?\n";
+        List<Path> paths = new ArrayList<>();
+        for (String line : text.split(separator)) {
+            if (!line.isEmpty()) {
+                Path path = Paths.get(line).toAbsolutePath().normalize();
+                try {
+                    paths.add(path.toRealPath(LinkOption.NOFOLLOW_LINKS));
+                } catch (IOException e) {
+                    paths.add(path); // reported when files are listed
+                }
+            }
+        }
+        logger.info("files-from", source, ":", paths.size(), "files");
+        return paths;
+    }
+
     private Path asPath(String text) {
         try {
             return Paths.get(text).toRealPath(LinkOption.NOFOLLOW_LINKS);
@@ -204,7 +394,7 @@ public class App {
                     if (removeEmpty) {
                         sourceDirectories.stream()
                                 .map(this::asPath)
-                                .forEach(source -> statistics.add(actions.removeEmpty("no-empty", source)));
+                                .forEach(source -> statistics.add(actions.removeVacated("no-empty", source)));
                     }
                 } else if (removeDuplicates && hasSource() && hasTarget()) {
                     sourceDirectories.stream()
@@ -214,7 +404,7 @@ public class App {
                     if (removeEmpty) {
                         sourceDirectories.stream()
                                 .map(this::asPath)
-                                .forEach(source -> statistics.add(actions.removeEmpty("no-empty", source)));
+                                .forEach(source -> statistics.add(actions.removeVacated("no-empty", source)));
                     }
                 } else if (removeDuplicates && hasSource()) { // random files in source directory
                     sourceDirectories.stream()
@@ -224,13 +414,13 @@ public class App {
                     if (removeEmpty) {
                         sourceDirectories.stream()
                                 .map(this::asPath)
-                                .forEach(source -> statistics.add(actions.removeEmpty("no-empty", source)));
+                                .forEach(source -> statistics.add(actions.removeVacated("no-empty", source)));
                     }
                 } else if (removeDuplicates && hasTarget()) { // directory-ordered files in target directory
                     statistics.add(actions.removeDuplicatesPerDirectory("no-target-copies", asPath(targetDirectory)));
 
                     if (removeEmpty) {
-                        statistics.add(actions.removeEmpty("no-empty", asPath(targetDirectory)));
+                        statistics.add(actions.removeVacated("no-empty", asPath(targetDirectory)));
                     }
                 } else if (reorganize) {
                     require(true, false);
@@ -242,7 +432,7 @@ public class App {
                     if (removeEmpty) {
                         sourceDirectories.stream()
                                 .map(this::asPath)
-                                .forEach(source -> statistics.add(actions.removeEmpty("no-empty", source)));
+                                .forEach(source -> statistics.add(actions.removeVacated("no-empty", source)));
                     }
                 } else if (removeEmpty) {
                     requireAny();
@@ -255,6 +445,25 @@ public class App {
                     if (hasTarget()) {
                         statistics.add(actions.removeEmpty("no-empty", asPath(targetDirectory)));
                     }
+                } else if (watch) {
+                    require(true, true);
+
+                    // files dropped while not watching are organized first
+                    sourceDirectories.stream()
+                            .map(this::asPath)
+                            .forEach(source -> statistics.add(actions.organize("organize", source, asPath(targetDirectory))));
+
+                    // stopped on shutdown so statistics are still logged
+                    Thread main = Thread.currentThread();
+                    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                        try {
+                            watcher.stop();
+                            main.join(10000);
+                        } catch (IOException | InterruptedException e) {
+                            // exiting anyway
+                        }
+                    }));
+                    statistics.add(actions.watch("watch", sourceDirectories.stream().map(this::asPath).collect(Collectors.toList()), asPath(targetDirectory)));
                 } else if (synchronize) {
                     require(true, true);
 
@@ -263,6 +472,11 @@ public class App {
                     fail();
                 }
             } finally {
+                try {
+                    directoryIndex.save();
+                } catch (IOException e) {
+                    logger.error("index", e, directoryIndex.getPath());
+                }
                 statistics.stream().filter(Statistics::hasData).forEach(stats -> {
                     logger.label(stats.getId());
                     stats.getData().forEach((k, v) -> logger.info(k, v.toString()));
@@ -277,11 +491,52 @@ public class App {
                 }
                 logger.label("");
                 logger.info("", "buffer size in bytes", fileCompare.getInternalBufferSize());
+                bufferTuner.getBufferSizes().forEach((store, size) -> logger.info("", "adaptive buffer size in bytes", size > 0 ? size : "not calibrated", "for", store));
+                if (fileCompare.getSampledCompares() > 0) {
+                    logger.info("", "sampled compares", fileCompare.getSampledCompares(), "coverage",
+                            String.format("%.4f%% average, %.4f%% min", 100 * fileCompare.getCoverage(), 100 * fileCompare.getMinCoverage()));
+                }
+                if (digestCache.getHits() + digestCache.getMisses() > 0) {
+                    logger.info("", "digest cache", digestCache.getHits(), "hits", digestCache.getMisses(), "misses");
+                }
+                if (scanFilter.getSkippedFiles() + scanFilter.getPrunedDirectories() > 0) {
+                    logger.info("", "scan filter", scanFilter.getSkippedFiles(), "files skipped", scanFilter.getPrunedDirectories(), "directories pruned");
+                }
+                if (directoryIndex.getHits() + directoryIndex.getMisses() > 0) {
+                    logger.info("", "directory index", directoryIndex.getHits(), "unchanged", directoryIndex.getMisses(), "changed or new");
+                }
+                logger.info("", "direct buffers", bufferPool.getAllocations(), "allocated", bufferPool.getReuses(), "reused",
+                        String.format("%.1f MB", bufferPool.getAllocatedBytes() / (1024.0 * 1024.0)));
+                logMemory();
+                if (fileAnalyzer.getFiles() > 0) {
+                    logger.info("", "analyzed", fileAnalyzer.getFiles(), "files", String.format("%.1f MB", fileAnalyzer.getBytes() / (1024.0 * 1024.0)));
+                }
+                if (readAhead.getFiles() > 0) {
+                    logger.info("", "read ahead", readAhead.getFiles(), "files", String.format("%.1f MB", readAhead.getBytesRead() / (1024.0 * 1024.0)));
+                }
+                if (hashEngine.getBytesRead() > 0) {
+                    double megabytes = hashEngine.getBytesRead() / (1024.0 * 1024.0);
+                    double seconds = hashEngine.getReadNanos() / 1000000000.0;
+                    logger.info("", "hashed", String.format("%.1f MB in %.1f s, %.1f MB/s", megabytes, seconds, seconds == 0 ? 0 : megabytes / seconds),
+                            "order", ReadOrder.of(ioService.getOrder()).getLabel());
+                }
                 logger.info("", "total time", (currentTimeMillis() - time) / 1000, "seconds");
             }
         }
     }
 
+    private void logMemory() {
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        long collections = 0;
+        long collectionTime = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            collections += Math.max(0, collector.getCollectionCount());
+            collectionTime += Math.max(0, collector.getCollectionTime());
+        }
+        logger.info("", "heap", String.format("%.1f MB used, %.1f MB committed", heap.getUsed() / (1024.0 * 1024.0), heap.getCommitted() / (1024.0 * 1024.0)),
+                "gc", collections, "collections", collectionTime, "ms");
+    }
+
     private String opt(String key, boolean value) {
         return value ? key : "";
     }
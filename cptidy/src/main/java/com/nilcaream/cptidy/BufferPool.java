@@ -0,0 +1,58 @@
+package com.nilcaream.cptidy;
+
+import javax.inject.Singleton;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+// direct buffers allocated on first use and reused by compare, hash and zero blocks scan
+// buffers are pooled by exact capacity; released buffers above pool limit are left to garbage collector
+@Singleton
+public class BufferPool {
+
+    private static final long LIMIT = 256 * 1024 * 1024;
+
+    private final Map<Integer, Deque<ByteBuffer>> buffers = new HashMap<>();
+
+    private long pooledBytes = 0;
+
+    private int allocations = 0;
+    private long allocatedBytes = 0;
+    private int reuses = 0;
+
+    // cleared buffer of given capacity
+    public synchronized ByteBuffer acquire(int size) {
+        Deque<ByteBuffer> pooled = buffers.get(size);
+        ByteBuffer buffer = pooled == null ? null : pooled.poll();
+        if (buffer == null) {
+            allocations++;
+            allocatedBytes += size;
+            return ByteBuffer.allocateDirect(size);
+        } else {
+            reuses++;
+            pooledBytes -= size;
+            return buffer.clear();
+        }
+    }
+
+    public synchronized void release(ByteBuffer buffer) {
+        if (buffer != null && buffer.isDirect() && pooledBytes + buffer.capacity() <= LIMIT) {
+            buffers.computeIfAbsent(buffer.capacity(), k -> new ArrayDeque<>()).push(buffer);
+            pooledBytes += buffer.capacity();
+        }
+    }
+
+    public synchronized int getAllocations() {
+        return allocations;
+    }
+
+    public synchronized long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    public synchronized int getReuses() {
+        return reuses;
+    }
+}
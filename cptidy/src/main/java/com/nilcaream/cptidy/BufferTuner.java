@@ -0,0 +1,149 @@
+package com.nilcaream.cptidy;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static java.lang.String.format;
+
+// picks buffer size per file store by measuring read throughput of each candidate size during the first reads
+// each candidate is used until it has read CALIBRATION_BYTES; the fastest one is used for the rest of the run
+// candidates larger than the file are not used for it, so on stores of small files calibration ends when all
+// candidates together have read CALIBRATION_BYTES each and large candidates which were never used are left out
+@Singleton
+public class BufferTuner {
+
+    private static final int[] CANDIDATES = {64 * 1024, 256 * 1024, 1024 * 1024, 4 * 1024 * 1024, 16 * 1024 * 1024};
+    private static final long CALIBRATION_BYTES = 64 * 1024 * 1024;
+
+    @Inject
+    private Logger logger;
+
+    private boolean enabled = false;
+
+    private final Map<Path, FileStore> directoryToStore = new HashMap<>();
+    private final Map<FileStore, Calibration> storeToCalibration = new LinkedHashMap<>();
+
+    // buffer size for reading given file; default size if adaptive mode is disabled or file store is unknown
+    public synchronized int bufferSize(Path path, int defaultSize) {
+        return bufferSize(path, defaultSize, Long.MAX_VALUE);
+    }
+
+    // as above for a file of given size
+    public synchronized int bufferSize(Path path, int defaultSize, long fileSize) {
+        if (!enabled) {
+            return defaultSize;
+        }
+        Calibration calibration = getCalibration(path);
+        return calibration == null ? defaultSize : calibration.next(fileSize);
+    }
+
+    // reports that given number of bytes of the file was read with given buffer size; sizes other than candidates are ignored
+    public synchronized void record(Path path, int bufferSize, long bytes, long nanos) {
+        if (enabled) {
+            Calibration calibration = getCalibration(path);
+            if (calibration != null && calibration.record(bufferSize, bytes, nanos)) {
+                logger.info("buffer", calibration.store, ":", calibration.chosen, "bytes", format("%.1f MB/s", calibration.speed(calibration.chosen)));
+            }
+        }
+    }
+
+    private Calibration getCalibration(Path path) {
+        Path directory = path.toAbsolutePath().getParent();
+        FileStore store = directoryToStore.computeIfAbsent(directory, d -> {
+            try {
+                return Files.getFileStore(path);
+            } catch (IOException e) {
+                return null;
+            }
+        });
+        return store == null ? null : storeToCalibration.computeIfAbsent(store, Calibration::new);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    // chosen buffer size per file store; 0 if calibration is not finished
+    public synchronized Map<String, Integer> getBufferSizes() {
+        Map<String, Integer> results = new LinkedHashMap<>();
+        storeToCalibration.values().forEach(c -> results.put(c.store.toString(), c.chosen));
+        return results;
+    }
+
+    private static final class Calibration {
+        private final FileStore store;
+        private final long[] bytes = new long[CANDIDATES.length];
+        private final long[] nanos = new long[CANDIDATES.length];
+        private int chosen = 0;
+
+        private Calibration(FileStore store) {
+            this.store = store;
+        }
+
+        // chosen size or candidate not larger than the file with the least bytes measured so far
+        private int next(long fileSize) {
+            if (chosen > 0) {
+                return chosen;
+            }
+            int next = 0;
+            for (int i = 1; i < CANDIDATES.length && CANDIDATES[i] <= fileSize; i++) {
+                if (bytes[i] < bytes[next]) {
+                    next = i;
+                }
+            }
+            return CANDIDATES[next];
+        }
+
+        // returns true if calibration was completed by this record
+        private boolean record(int bufferSize, long bytesRead, long time) {
+            int index = indexOf(bufferSize);
+            if (chosen > 0 || index < 0) {
+                return false;
+            }
+            bytes[index] += bytesRead;
+            nanos[index] += time;
+            long total = 0;
+            boolean all = true;
+            for (long measured : bytes) {
+                total += measured;
+                all = all && measured >= CALIBRATION_BYTES;
+            }
+            if (!all && total < CANDIDATES.length * CALIBRATION_BYTES) {
+                return false;
+            }
+            chosen = CANDIDATES[0];
+            for (int candidate : CANDIDATES) {
+                if (speed(candidate) > speed(chosen)) {
+                    chosen = candidate;
+                }
+            }
+            return true;
+        }
+
+        // MB/s measured for given candidate
+        private double speed(int bufferSize) {
+            int index = indexOf(bufferSize);
+            return nanos[index] == 0 ? 0 : (bytes[index] / (1024.0 * 1024.0)) / (nanos[index] / 1000000000.0);
+        }
+
+        private int indexOf(int bufferSize) {
+            for (int i = 0; i < CANDIDATES.length; i++) {
+                if (CANDIDATES[i] == bufferSize) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.nilcaream.cptidy;
+
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+public enum CompareMode {
+
+    // buffered streams read block by block
+    STREAM("stream"),
+
+    // large memory mapped windows compared with vectorised mismatch
+    MMAP("mmap"),
+
+    // asynchronous reads of next blocks overlapped with compare of current blocks
+    ASYNC("async");
+
+    private final String label;
+
+    CompareMode(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public static CompareMode of(String label) {
+        return Arrays.stream(values())
+                .filter(v -> v.label.equalsIgnoreCase(label))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Unknown compare mode " + label + ". Use one of: " + Arrays.stream(values()).map(v -> v.label).collect(Collectors.joining(" "))));
+    }
+}
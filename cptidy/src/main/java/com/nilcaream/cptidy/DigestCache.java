@@ -0,0 +1,82 @@
+package com.nilcaream.cptidy;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// run scoped digests of files identified by file key, size and modification time; least recently used entries are evicted
+// disabled unless capacity is set, in which case duplicates are decided by digest equality instead of content comparison
+@Singleton
+public class DigestCache {
+
+    @Inject
+    private HashEngine hashEngine;
+
+    private int capacity = 0;
+    private int hits = 0;
+    private int misses = 0;
+
+    private final Map<List<Object>, String> digests = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<List<Object>, String> eldest) {
+            return size() > capacity;
+        }
+    };
+
+    public String digest(Path path, HashAlgorithm algorithm) throws IOException {
+        if (!isEnabled()) {
+            return hashEngine.hash(path, algorithm);
+        }
+        List<Object> key = List.of(identity(path), algorithm);
+        String digest = digests.get(key);
+        if (digest == null) {
+            misses++;
+            digest = hashEngine.hash(path, algorithm);
+            digests.put(key, digest);
+        } else {
+            hits++;
+        }
+        return digest;
+    }
+
+    // digest computed elsewhere from the same read, e.g. by the analysis pass
+    public void put(Path path, HashAlgorithm algorithm, String digest) throws IOException {
+        if (isEnabled()) {
+            digests.put(List.of(identity(path), algorithm), digest);
+        }
+    }
+
+    // file key (or real path), size and modification time; changes when the file is replaced or modified
+    static List<Object> identity(Path path) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        Object fileKey = attributes.fileKey() == null ? path.toRealPath() : attributes.fileKey();
+        return List.of(fileKey, attributes.size(), attributes.lastModifiedTime());
+    }
+
+    public boolean isEnabled() {
+        return capacity > 0;
+    }
+
+    public void setCapacity(int capacity) {
+        this.capacity = Math.max(0, capacity);
+        digests.clear();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getHits() {
+        return hits;
+    }
+
+    public int getMisses() {
+        return misses;
+    }
+}
@@ -0,0 +1,192 @@
+package com.nilcaream.cptidy;
+
+import com.github.underscore.U;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// per directory summary and results of the last run persisted between runs
+// directory is unchanged if its modification time, number of files and hash of sorted file listing
+// (name, size and modification time of each file) are the same as in the last run
+// files modified in place without changing size or modification time are not detected
+@Singleton
+public class DirectoryIndex {
+
+    @Inject
+    private Logger logger;
+
+    // default passes everything when not injected
+    @Inject
+    private ScanFilter scanFilter = new ScanFilter();
+
+    private Path path;
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+
+    private int hits = 0;
+    private int misses = 0;
+
+    public boolean isEnabled() {
+        return path != null;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public int getHits() {
+        return hits;
+    }
+
+    public int getMisses() {
+        return misses;
+    }
+
+    // index file does not have to exist; unreadable index is logged and replaced at the end of the run
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public void load(Path path) {
+        this.path = path;
+        entries.clear();
+        if (Files.exists(path)) {
+            try {
+                Map<String, Map> map = (Map<String, Map>) U.fromJson(Files.readString(path));
+                map.forEach((key, value) -> entries.put(key, new Entry(
+                        new Summary(((Number) value.get("modified")).longValue(), ((Number) value.get("count")).intValue(), (String) value.get("hash")),
+                        (List<List<String>>) value.get("results"))));
+            } catch (RuntimeException | IOException e) {
+                logger.warn("index", path, "cannot be read", e.getMessage());
+                entries.clear();
+            }
+        }
+    }
+
+    public void save() throws IOException {
+        if (isEnabled()) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            entries.forEach((key, entry) -> {
+                Map<String, Object> value = new LinkedHashMap<>();
+                value.put("modified", entry.summary.modified);
+                value.put("count", entry.summary.count);
+                value.put("hash", entry.summary.hash);
+                value.put("results", entry.results);
+                map.put(key, value);
+            });
+            Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+            Files.writeString(temporary, U.toJson(map));
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // summary from records of regular files directly in the directory, e.g. taken from the walk
+    public Summary summarize(Path directory, List<FileRecord> files) throws IOException {
+        Hasher hasher = HashAlgorithm.XXH64.create();
+        files.stream()
+                .sorted(Comparator.comparing(f -> f.getPath().getFileName().toString()))
+                .map(f -> f.getPath().getFileName() + "/" + f.getSize() + "/" + f.getLastModifiedTime().toMillis() + "\n")
+                .forEach(line -> {
+                    byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+                    hasher.update(bytes, 0, bytes.length);
+                });
+        String hash = String.format("%016x", ByteBuffer.wrap(hasher.digest()).getLong());
+        return new Summary(Files.getLastModifiedTime(directory).toMillis(), files.size(), hash);
+    }
+
+    // summary of the current directory content, e.g. after files were moved or deleted
+    public Summary summarize(Path directory) throws IOException {
+        List<FileRecord> files = new ArrayList<>();
+        try (Stream<Path> list = Files.list(directory)) {
+            for (Path file : list.collect(Collectors.toList())) {
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                if (attributes.isRegularFile() && scanFilter.accepts(file, attributes)) {
+                    files.add(new FileRecord(file, attributes));
+                }
+            }
+        }
+        return summarize(directory, files);
+    }
+
+    // results of the last run of the action or null if the directory changed since or was not indexed
+    public List<List<String>> getResults(String action, Path directory, Summary summary) {
+        if (!isEnabled()) {
+            return null;
+        }
+        Entry entry = entries.get(key(action, directory));
+        if (entry != null && entry.summary.equals(summary)) {
+            hits++;
+            return entry.results;
+        } else {
+            misses++;
+            return null;
+        }
+    }
+
+    public void put(String action, Path directory, Summary summary, List<List<String>> results) {
+        if (isEnabled()) {
+            entries.put(key(action, directory), new Entry(summary, results));
+        }
+    }
+
+    public void remove(String action, Path directory) {
+        entries.remove(key(action, directory));
+    }
+
+    private String key(String action, Path directory) {
+        return action + " " + directory.toAbsolutePath().normalize();
+    }
+
+    public static final class Summary {
+        private final long modified;
+        private final int count;
+        private final String hash;
+
+        Summary(long modified, int count, String hash) {
+            this.modified = modified;
+            this.count = count;
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Summary summary = (Summary) o;
+            return modified == summary.modified && count == summary.count && hash.equals(summary.hash);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(modified, count, hash);
+        }
+
+        @Override
+        public String toString() {
+            return modified + " " + count + " " + hash;
+        }
+    }
+
+    private static final class Entry {
+        private final Summary summary;
+        private final List<List<String>> results;
+
+        private Entry(Summary summary, List<List<String>> results) {
+            this.summary = summary;
+            this.results = results;
+        }
+    }
+}
@@ -8,13 +8,18 @@ import com.drew.metadata.Tag;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -33,8 +38,61 @@ public class ExifService {
                     ".*exif.*date/time.* (20[0123][0-9]):([01][0-9]):([0123][0-9]) .*")
             .map(t -> Pattern.compile(t, Pattern.CASE_INSENSITIVE)).collect(Collectors.toList());
 
+    private static final long FALLBACK_BYTES = 16 * 1024 * 1024;
+
+    private boolean fused = false;
+    private int capacity = 10000;
+
+    // dates parsed from headers read by the analysis pass; null values are kept as well
+    private final Map<List<Object>, DateString> headerDates = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<List<Object>, DateString> eldest) {
+            return size() > capacity;
+        }
+    });
+
+    // dates of analyzed files are looked up only with fused analysis, otherwise the file is read without another stat
     public DateString getDate(Path source) {
-        try (InputStream inputStream = Files.newInputStream(source)) {
+        if (fused) {
+            try {
+                List<Object> key = DigestCache.identity(source);
+                synchronized (headerDates) {
+                    if (headerDates.containsKey(key)) {
+                        return headerDates.get(key);
+                    }
+                }
+            } catch (IOException e) {
+                // not analyzed; file is read below
+            }
+        }
+        return read(source);
+    }
+
+    // date from the first bytes of the file; file is parsed again only if the header is shorter than the file
+    // and has no date, e.g. video with metadata at the end; skipped regions (e.g. media data) are not read then
+    // and at most FALLBACK_BYTES are read, so a file without date is not read in full a second time
+    public DateString getDate(Path source, byte[] header, long size) throws IOException {
+        DateString date = null;
+        try {
+            date = getDate(source, ImageMetadataReader.readMetadata(new ByteArrayInputStream(header)));
+        } catch (ImageProcessingException | IOException e) {
+            if (header.length >= size) {
+                logger.warn("exif-error", source);
+            }
+        }
+        if (date == null && header.length < size) {
+            date = read(source, FALLBACK_BYTES);
+        }
+        headerDates.put(DigestCache.identity(source), date);
+        return date;
+    }
+
+    private DateString read(Path source) {
+        return read(source, Long.MAX_VALUE);
+    }
+
+    private DateString read(Path source, long limit) {
+        try (InputStream inputStream = new BoundedInputStream(Files.newInputStream(source), limit)) {
             return getDate(source, ImageMetadataReader.readMetadata(inputStream));
         } catch (ImageProcessingException | IOException e) {
             logger.warn("exif-error", source);
@@ -81,4 +139,47 @@ public class ExifService {
         logger.debug("exif-none", source);
         return null;
     }
+
+    public void setFused(boolean fused) {
+        this.fused = fused;
+    }
+
+    public void setCapacity(int capacity) {
+        this.capacity = Math.max(0, capacity);
+        headerDates.clear();
+    }
+
+    // ends the stream after given number of bytes was read; skip is passed through so skipped bytes are not counted
+    private static final class BoundedInputStream extends FilterInputStream {
+        private long remaining;
+
+        private BoundedInputStream(InputStream inputStream, long limit) {
+            super(inputStream);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int result = super.read();
+            if (result != -1) {
+                remaining--;
+            }
+            return result;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int result = super.read(bytes, offset, (int) Math.min(length, remaining));
+            if (result > 0) {
+                remaining -= result;
+            }
+            return result;
+        }
+    }
 }
@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.regex.Pattern;
@@ -21,6 +22,21 @@ public class ExplicitDates {
     }
 
     public DateString getDate(Path input) throws IOException {
+        return getDate(input, null);
+    }
+
+    public DateString getDate(FileRecord input) throws IOException {
+        return getDate(input.getPath(), input);
+    }
+
+    // true if any pattern matches file name; date is not resolved
+    public boolean matches(Path input) {
+        String fileName = input.getFileName().toString();
+        return patternTextToPattern.values().stream().anyMatch(pattern -> pattern.matcher(fileName).matches());
+    }
+
+    // record is null if attributes were not read yet
+    private DateString getDate(Path input, FileRecord record) throws IOException {
         String fileName = input.getFileName().toString();
         String match = patternTextToPattern.entrySet().stream()
                 .filter(e -> e.getValue().matcher(fileName).matches())
@@ -32,14 +48,14 @@ public class ExplicitDates {
         if (match == null) {
             return null;
         } else {
-            return resolve(match, input);
+            return resolve(match, input, record);
         }
     }
 
-    private DateString resolve(String match, Path input) throws IOException {
+    private DateString resolve(String match, Path input, FileRecord record) throws IOException {
         if (match.equals("FILE_DATE")) {
-            BasicFileAttributes attr = Files.readAttributes(input, BasicFileAttributes.class);
-            return new DateString(attr.creationTime().toString().substring(0, 10));
+            FileTime creationTime = record == null ? Files.readAttributes(input, BasicFileAttributes.class).creationTime() : record.getCreationTime();
+            return new DateString(creationTime.toString().substring(0, 10));
         } else {
             return new DateString(match);
         }
@@ -0,0 +1,114 @@
+package com.nilcaream.cptidy;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// single read analysis pass: the first HEADER_SIZE bytes of blocks read for the content digest are parsed for exif date;
+// results are kept for later actions of the run, digest is also put into the digest cache and exif date into the exif service
+@Singleton
+public class FileAnalyzer {
+
+    private static final int HEADER_SIZE = 1024 * 1024;
+
+    @Inject
+    private Logger logger;
+
+    @Inject
+    private HashEngine hashEngine;
+
+    @Inject
+    private ExifService exifService;
+
+    @Inject
+    private DigestCache digestCache;
+
+    private boolean enabled = false;
+    private int capacity = 10000;
+    private int files = 0;
+    private long bytes = 0;
+
+    private final Map<List<Object>, Analysis> analyses = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<List<Object>, Analysis> eldest) {
+            return size() > capacity;
+        }
+    };
+
+    // file is read only if it was not analyzed with the same algorithm before or has been modified since
+    public Analysis analyze(Path path, HashAlgorithm algorithm) throws IOException {
+        List<Object> key = DigestCache.identity(path);
+        Analysis analysis = analyses.get(key);
+        if (analysis == null || analysis.algorithm != algorithm) {
+            long size = Files.size(path);
+            ByteBuffer header = ByteBuffer.allocate((int) Math.min(HEADER_SIZE, size));
+            String digest = hashEngine.hash(path, algorithm, block -> {
+                if (header.hasRemaining()) {
+                    header.put(block.limit(block.position() + Math.min(block.remaining(), header.remaining())));
+                }
+            });
+            DateString date = exifService.getDate(path, Arrays.copyOf(header.array(), header.position()), size);
+            analysis = new Analysis(algorithm, digest, date);
+            analyses.put(key, analysis);
+            digestCache.put(path, algorithm, digest);
+
+            files++;
+            bytes += size;
+            logger.debug("analysis", path, ":", digest, date);
+        }
+        return analysis;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public void setCapacity(int capacity) {
+        this.capacity = Math.max(0, capacity);
+        analyses.clear();
+    }
+
+    public int getFiles() {
+        return files;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public static final class Analysis {
+        private final HashAlgorithm algorithm;
+        private final String digest;
+        private final DateString date;
+
+        Analysis(HashAlgorithm algorithm, String digest, DateString date) {
+            this.algorithm = algorithm;
+            this.digest = digest;
+            this.date = date;
+        }
+
+        public HashAlgorithm getAlgorithm() {
+            return algorithm;
+        }
+
+        public String getDigest() {
+            return digest;
+        }
+
+        // exif date or null
+        public DateString getDate() {
+            return date;
+        }
+    }
+}
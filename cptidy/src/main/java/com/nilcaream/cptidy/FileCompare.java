@@ -3,47 +3,69 @@ package com.nilcaream.cptidy;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
 import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 
 import static java.nio.file.StandardOpenOption.READ;
 
 @Singleton
 public class FileCompare {
 
-    private final MessageDigest digest;
+    private static final long MAP_WINDOW = 1024 * 1024 * 1024;
+    private static final String[] REGION_NAMES = {"start", "end", "middle"};
+    private static final int MAX_OPEN = 64;
 
-    private byte[] internalBufferA = new byte[16 * 1024 * 1024];
-    private byte[] internalBufferB = new byte[16 * 1024 * 1024];
+    private int bufferSize = 16 * 1024 * 1024;
+
+    private int samples = 0;
+    private int sampleSize = 0;
+
+    private int sampledCompares = 0;
+    private double coverageSum = 0;
+    private double minCoverage = 1;
 
     @Inject
     private Logger logger;
 
-    {
-        try {
-            digest = MessageDigest.getInstance("SHA-256");
-        } catch (NoSuchAlgorithmException e) {
-            throw new IllegalStateException(e);
-        }
-    }
+    @Inject
+    private BufferPool bufferPool;
+
+    @Inject
+    private BufferTuner bufferTuner;
 
     public void updateBufferSize(int bufferSize) {
-        int size = Math.max(1024, 1024 * (int) (Math.ceil(bufferSize / 1024.0)));
-        internalBufferA = new byte[size];
-        internalBufferB = new byte[size];
+        this.bufferSize = Math.max(1024, 1024 * (int) (Math.ceil(bufferSize / 1024.0)));
     }
 
     public boolean byHash(Path pathA, Path pathB, int bufferSize) throws IOException {
+        return byHash(pathA, pathB, bufferSize, HashAlgorithm.SHA_256);
+    }
+
+    public boolean byHash(Path pathA, Path pathB, int bufferSize, HashAlgorithm algorithm) throws IOException {
         if (areExplicitlyDifferent(pathA, pathB)) {
             return false;
         } else {
-            return Arrays.equals(hash(pathA, bufferSize), hash(pathB, bufferSize));
+            Hasher hasher = algorithm.create();
+            return Arrays.equals(hash(pathA, bufferSize, hasher), hash(pathB, bufferSize, hasher));
         }
     }
 
@@ -51,42 +73,93 @@ public class FileCompare {
         if (areExplicitlyDifferent(pathA, pathB)) {
             return false;
         } else {
-            byte[] bufferA = new byte[bufferSize];
-            byte[] bufferB = new byte[bufferSize];
-
-            return byteByByteWithProvidedBuffers(pathA, pathB, bufferA, bufferB);
+            return byteByByteWithPooledBuffers(pathA, pathB, bufferSize);
         }
     }
 
+    // compares start, end and middle regions and given number of pseudo-random regions
+    // region offsets depend only on file size so same regions are compared for every file of the same size
     public boolean fast(Path pathA, Path pathB) throws IOException {
         if (areExplicitlyDifferent(pathA, pathB)) {
             return false;
-        } else if (Files.size(pathA) < internalBufferA.length) {
-            return byteByByteWithProvidedBuffers(pathA, pathB, internalBufferA, internalBufferB);
+        } else if (Files.size(pathA) < bufferSize) {
+            return byteByByteWithTunedBuffers(pathA, pathB);
         } else {
             long fileSize = Files.size(pathA);
-            long bufferSize = internalBufferA.length / 4;
+            long regionSize = Math.min(fileSize / 4, sampleSize > 0 ? sampleSize : bufferSize / 4);
+
+            List<long[]> regions = new ArrayList<>();
+            regions.add(new long[]{0, regionSize}); // start
+            regions.add(new long[]{fileSize - regionSize, fileSize}); // end
+            regions.add(new long[]{fileSize / 2 - regionSize, fileSize / 2 + regionSize}); // middle
+            SplittableRandom random = new SplittableRandom(fileSize);
+            for (int i = 0; i < samples; i++) {
+                long start = random.nextLong(fileSize - regionSize + 1);
+                regions.add(new long[]{start, start + regionSize});
+            }
 
             try (FileChannel channelA = (FileChannel) Files.newByteChannel(pathA); FileChannel channelB = (FileChannel) Files.newByteChannel(pathB)) {
-                if (isNotEqual(channelA, channelB, 0, bufferSize)) { // start
-                    logger.infoStat("diff start", pathA, "<->", pathB);
-                    return false;
-                } else if (isNotEqual(channelA, channelB, fileSize - bufferSize, fileSize)) { // end
-                    logger.infoStat("diff end", pathA, "<->", pathB);
-                    return false;
-                } else if (isNotEqual(channelA, channelB, fileSize / 2 - bufferSize, fileSize / 2 + bufferSize)) { // middle
-                    logger.infoStat("diff middle", pathA, "<->", pathB);
-                    return false;
+                for (int i = 0; i < regions.size(); i++) {
+                    long offset = mismatch(channelA, channelB, regions.get(i)[0], regions.get(i)[1]);
+                    if (offset != -1) {
+                        logger.infoStat("diff " + (i < REGION_NAMES.length ? REGION_NAMES[i] : "sample"), pathA, "<->", pathB, "at", offset);
+                        return false;
+                    }
                 }
             }
+            addSampling(fileSize, regions);
             return true;
         }
     }
 
-    private boolean isNotEqual(FileChannel channelA, FileChannel channelB, long start, long end) throws IOException {
+    // probability that a single differing region placed at random offset is not covered by any of the compared regions
+    private void addSampling(long fileSize, List<long[]> regions) {
+        regions.sort(Comparator.comparingLong(r -> r[0]));
+        long covered = 0;
+        long coveredEnd = 0;
+        for (long[] region : regions) {
+            long start = Math.max(region[0], coveredEnd);
+            if (region[1] > start) {
+                covered += region[1] - start;
+                coveredEnd = region[1];
+            }
+        }
+        double coverage = (double) covered / fileSize;
+        sampledCompares++;
+        coverageSum += coverage;
+        minCoverage = Math.min(minCoverage, coverage);
+    }
+
+    // offset of the first differing byte in given region or -1 if region content is the same
+    private long mismatch(FileChannel channelA, FileChannel channelB, long start, long end) throws IOException {
         MappedByteBuffer byteBufferA = channelA.map(FileChannel.MapMode.READ_ONLY, start, end - start);
         MappedByteBuffer byteBufferB = channelB.map(FileChannel.MapMode.READ_ONLY, start, end - start);
-        return !byteBufferA.equals(byteBufferB);
+        int index = byteBufferA.mismatch(byteBufferB);
+        return index == -1 ? -1 : start + index;
+    }
+
+    // offset of the first differing byte or -1 if content is the same; 0 if any of the files does not exist
+    // each large window is mapped once and compared with ByteBuffer.mismatch
+    public long mismatch(Path pathA, Path pathB) throws IOException {
+        return mismatch(pathA, pathB, MAP_WINDOW);
+    }
+
+    public long mismatch(Path pathA, Path pathB, long windowSize) throws IOException {
+        if (!Files.exists(pathA) || !Files.exists(pathB)) {
+            return 0;
+        }
+        try (FileChannel channelA = FileChannel.open(pathA, READ); FileChannel channelB = FileChannel.open(pathB, READ)) {
+            long sizeA = channelA.size();
+            long sizeB = channelB.size();
+            long size = Math.min(sizeA, sizeB);
+            for (long position = 0; position < size; position += windowSize) {
+                long offset = mismatch(channelA, channelB, position, Math.min(size, position + windowSize));
+                if (offset != -1) {
+                    return offset;
+                }
+            }
+            return sizeA == sizeB ? -1 : size;
+        }
     }
 
     public boolean byteByByte(Path pathA, Path pathB, byte[] bufferA, byte[] bufferB) throws IOException {
@@ -101,7 +174,41 @@ public class FileCompare {
         if (areExplicitlyDifferent(pathA, pathB)) {
             return false;
         } else {
-            return byteByByteWithProvidedBuffers(pathA, pathB, internalBufferA, internalBufferB);
+            return byteByByteWithTunedBuffers(pathA, pathB);
+        }
+    }
+
+    // buffer size (adaptive per file store if enabled) rounded up to power of two for files smaller than buffer
+    // so that small files do not hold large buffers
+    private int blockSize(Path path, long fileSize) {
+        return blockSize(bufferTuner.bufferSize(path, bufferSize), fileSize);
+    }
+
+    private int blockSize(int bufferSize, long fileSize) {
+        return (int) Math.min(bufferSize, Math.max(4096, Long.highestOneBit(Math.max(1, fileSize)) << 1));
+    }
+
+    // throughput of fully read files is reported to buffer tuner only if they were read with the tuned size
+    private boolean byteByByteWithTunedBuffers(Path pathA, Path pathB) throws IOException {
+        long fileSize = Files.size(pathA);
+        int tunedSize = bufferTuner.bufferSize(pathA, bufferSize, fileSize);
+        int blockSize = blockSize(tunedSize, fileSize);
+        long time = System.nanoTime();
+        boolean result = byteByByteWithPooledBuffers(pathA, pathB, blockSize);
+        if (result && blockSize == tunedSize) {
+            bufferTuner.record(pathA, blockSize, 2 * fileSize, System.nanoTime() - time);
+        }
+        return result;
+    }
+
+    private boolean byteByByteWithPooledBuffers(Path pathA, Path pathB, int bufferSize) throws IOException {
+        ByteBuffer bufferA = bufferPool.acquire(bufferSize);
+        ByteBuffer bufferB = bufferPool.acquire(bufferSize);
+        try {
+            return byteByByteWithProvidedBuffers(pathA, pathB, bufferA, bufferB);
+        } finally {
+            bufferPool.release(bufferA);
+            bufferPool.release(bufferB);
         }
     }
 
@@ -111,27 +218,215 @@ public class FileCompare {
         } else if (bufferA == bufferB) {
             throw new IllegalArgumentException("Buffers reference the same array");
         } else {
-            int bytesReadA = 0;
-            int bytesReadB;
-
-            try (InputStream inputStreamA = Files.newInputStream(pathA, READ); InputStream inputStreamB = Files.newInputStream(pathB, READ)) {
-                while (bytesReadA != -1) {
-                    bytesReadA = inputStreamA.read(bufferA);
-                    bytesReadB = inputStreamB.read(bufferB);
-                    if (bytesReadA != bytesReadB) {
-                        return false;
-                    } else {
-                        if (bytesReadA != -1 && !Arrays.equals(bufferA, 0, bytesReadA, bufferB, 0, bytesReadA)) {
-                            return false;
+            return byteByByteWithProvidedBuffers(pathA, pathB, ByteBuffer.wrap(bufferA), ByteBuffer.wrap(bufferB));
+        }
+    }
+
+    private boolean byteByByteWithProvidedBuffers(Path pathA, Path pathB, ByteBuffer bufferA, ByteBuffer bufferB) throws IOException {
+        try (FileChannel channelA = FileChannel.open(pathA, READ); FileChannel channelB = FileChannel.open(pathB, READ)) {
+            while (true) {
+                int bytesReadA = read(channelA, bufferA.clear());
+                int bytesReadB = read(channelB, bufferB.clear());
+                if (bytesReadA != bytesReadB) {
+                    return false;
+                } else if (bytesReadA == 0) {
+                    return true;
+                } else if (bufferA.flip().mismatch(bufferB.flip()) != -1) {
+                    return false;
+                }
+            }
+        }
+    }
+
+    // reads until buffer is full or end of file is reached
+    private int read(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+            // keep reading
+        }
+        return buffer.position();
+    }
+
+    // reads all files in lockstep block by block; each file is read once and dropped as soon as it diverges
+    // returns full partition into same content classes (including single element classes)
+    public List<List<Path>> partition(List<Path> paths) throws IOException {
+        List<List<Path>> results = new ArrayList<>();
+        Map<Long, List<Path>> sizeToPaths = new LinkedHashMap<>();
+        for (Path path : paths) {
+            if (Files.exists(path)) {
+                sizeToPaths.computeIfAbsent(Files.size(path), k -> new ArrayList<>()).add(path);
+            } else {
+                results.add(new ArrayList<>(List.of(path)));
+            }
+        }
+        for (Map.Entry<Long, List<Path>> entry : sizeToPaths.entrySet()) {
+            if (entry.getValue().size() == 1) {
+                results.add(entry.getValue());
+            } else {
+                results.addAll(partition(entry.getValue(), entry.getKey()));
+            }
+        }
+        return results;
+    }
+
+    // groups of more than MAX_OPEN files are first split by digests of consecutive blocks, reading one file at a time,
+    // so that open files and buffers stay bounded; different digests mean different content, same digests are verified
+    private List<List<Path>> partition(List<Path> paths, long size) throws IOException {
+        List<List<Path>> results = new ArrayList<>();
+        int blockSize = blockSize(paths.get(0), size);
+        Deque<Map.Entry<List<Path>, Long>> pending = new ArrayDeque<>(List.of(Map.entry(paths, 0L)));
+        while (!pending.isEmpty()) {
+            Map.Entry<List<Path>, Long> next = pending.pop();
+            List<Path> candidates = next.getKey();
+            long position = next.getValue();
+            if (candidates.size() == 1) {
+                results.add(candidates);
+            } else if (candidates.size() <= MAX_OPEN) {
+                results.addAll(partitionInLockstep(candidates, size));
+            } else if (position >= size) {
+                List<Path> same = new ArrayList<>(List.of(candidates.get(0)));
+                List<Path> different = new ArrayList<>();
+                for (Path path : candidates.subList(1, candidates.size())) {
+                    (byteByByteWithPooledBuffers(candidates.get(0), path, blockSize) ? same : different).add(path);
+                }
+                results.add(same);
+                if (!different.isEmpty()) {
+                    pending.push(Map.entry(different, position));
+                }
+            } else {
+                for (List<Path> split : splitByDigest(candidates, position, blockSize)) {
+                    pending.push(Map.entry(split, position + blockSize));
+                }
+            }
+        }
+        return results;
+    }
+
+    // digest only splits candidates, so a collision costs another read but never merges different files
+    private Collection<List<Path>> splitByDigest(List<Path> paths, long position, int blockSize) throws IOException {
+        Map<ByteBuffer, List<Path>> digestToPaths = new LinkedHashMap<>();
+        Hasher hasher = HashAlgorithm.XXH64.create();
+        ByteBuffer buffer = bufferPool.acquire(blockSize);
+        try {
+            for (Path path : paths) {
+                try (FileChannel channel = FileChannel.open(path, READ)) {
+                    Block block = new Block(path, channel, buffer);
+                    block.read(position);
+                    hasher.update(buffer);
+                }
+                digestToPaths.computeIfAbsent(ByteBuffer.wrap(hasher.digest()), k -> new ArrayList<>()).add(path);
+            }
+        } finally {
+            bufferPool.release(buffer);
+        }
+        return digestToPaths.values();
+    }
+
+    private List<List<Path>> partitionInLockstep(List<Path> paths, long size) throws IOException {
+        int blockSize = Integer.highestOneBit(Math.max(64 * 1024, bufferTuner.bufferSize(paths.get(0), bufferSize) / paths.size()));
+        List<List<Path>> results = new ArrayList<>();
+        List<List<Block>> classes = new ArrayList<>();
+        List<Block> blocks = new ArrayList<>();
+
+        try {
+            for (Path path : paths) {
+                blocks.add(new Block(path, FileChannel.open(path, READ), bufferPool.acquire(blockSize)));
+            }
+            classes.add(blocks);
+
+            for (long position = 0; position < size && !classes.isEmpty(); position += blockSize) {
+                List<List<Block>> next = new ArrayList<>();
+                for (List<Block> members : classes) {
+                    for (Block block : members) {
+                        block.read(position);
+                    }
+                    for (List<Block> split : split(members)) {
+                        if (split.size() == 1) {
+                            results.add(List.of(split.get(0).path));
+                            split.get(0).channel.close();
+                        } else {
+                            next.add(split);
                         }
                     }
                 }
+                classes = next;
             }
+            for (List<Block> members : classes) {
+                results.add(members.stream().map(b -> b.path).collect(Collectors.toList()));
+            }
+        } finally {
+            for (Block block : blocks) {
+                block.channel.close();
+                bufferPool.release(block.buffer);
+            }
+        }
+        return results;
+    }
 
-            return true;
+    // first candidate with the same content as source or null; candidates are read in lockstep with the source
+    // in batches of at most MAX_OPEN files, each is dropped at its first differing block and reading stops when none is left
+    public Path findSame(Path source, List<Path> candidates) throws IOException {
+        long size = Files.size(source);
+        List<Path> sameSize = new ArrayList<>();
+        for (Path candidate : candidates) {
+            if (Files.exists(candidate) && Files.size(candidate) == size) {
+                sameSize.add(candidate);
+            }
+        }
+        for (int from = 0; from < sameSize.size(); from += MAX_OPEN - 1) {
+            Path same = findSameInLockstep(source, sameSize.subList(from, Math.min(sameSize.size(), from + MAX_OPEN - 1)), size);
+            if (same != null) {
+                return same;
+            }
+        }
+        return null;
+    }
+
+    private Path findSameInLockstep(Path source, List<Path> candidates, long size) throws IOException {
+        int blockSize = Integer.highestOneBit(Math.max(64 * 1024, bufferTuner.bufferSize(source, bufferSize) / (candidates.size() + 1)));
+        List<Block> blocks = new ArrayList<>();
+
+        try {
+            blocks.add(new Block(source, FileChannel.open(source, READ), bufferPool.acquire(blockSize)));
+            for (Path path : candidates) {
+                blocks.add(new Block(path, FileChannel.open(path, READ), bufferPool.acquire(blockSize)));
+            }
+            Block sourceBlock = blocks.get(0);
+            List<Block> remaining = new ArrayList<>(blocks.subList(1, blocks.size()));
+
+            for (long position = 0; position < size && !remaining.isEmpty(); position += blockSize) {
+                sourceBlock.read(position);
+                Iterator<Block> iterator = remaining.iterator();
+                while (iterator.hasNext()) {
+                    Block block = iterator.next();
+                    block.read(position);
+                    if (!sourceBlock.isSame(block)) {
+                        iterator.remove();
+                        block.channel.close();
+                    }
+                }
+            }
+            return remaining.isEmpty() ? null : remaining.get(0).path;
+        } finally {
+            for (Block block : blocks) {
+                block.channel.close();
+                bufferPool.release(block.buffer);
+            }
         }
     }
 
+    private List<List<Block>> split(List<Block> blocks) {
+        List<List<Block>> results = new ArrayList<>();
+        for (Block block : blocks) {
+            List<Block> same = results.stream().filter(r -> r.get(0).isSame(block)).findFirst().orElse(null);
+            if (same == null) {
+                results.add(new ArrayList<>(List.of(block)));
+            } else {
+                same.add(block);
+            }
+        }
+        return results;
+    }
+
     // https://codereview.stackexchange.com/a/90152
     public boolean byByteChannel(final Path pathA, final Path pathB, int bufferSize) throws IOException {
         if (areExplicitlyDifferent(pathA, pathB)) {
@@ -143,7 +438,7 @@ public class FileCompare {
                 for (long position = 0; position < size; position += bufferSize) {
                     MappedByteBuffer bufferA = toBuffer(channelA, position, size, bufferSize);
                     MappedByteBuffer bufferB = toBuffer(channelB, position, size, bufferSize);
-                    if (!bufferA.equals(bufferB)) {
+                    if (bufferA.mismatch(bufferB) != -1) {
                         return false;
                     }
                 }
@@ -152,22 +447,84 @@ public class FileCompare {
         }
     }
 
+    // next blocks of both files are read asynchronously while current blocks are compared
+    public boolean byAsyncChannel(Path pathA, Path pathB) throws IOException {
+        if (areExplicitlyDifferent(pathA, pathB)) {
+            return false;
+        } else {
+            long size = Files.size(pathA);
+            int tunedSize = bufferTuner.bufferSize(pathA, bufferSize, size);
+            int blockSize = blockSize(tunedSize, size);
+            long time = System.nanoTime();
+            ByteBuffer[][] buffers = {
+                    {bufferPool.acquire(blockSize), bufferPool.acquire(blockSize)},
+                    {bufferPool.acquire(blockSize), bufferPool.acquire(blockSize)}
+            };
+
+            boolean result;
+            try (AsynchronousFileChannel channelA = AsynchronousFileChannel.open(pathA, READ); AsynchronousFileChannel channelB = AsynchronousFileChannel.open(pathB, READ)) {
+                result = byAsyncChannel(channelA, channelB, size, buffers);
+            }
+            // buffers are returned to the pool only if no read is pending
+            for (ByteBuffer[] pair : buffers) {
+                bufferPool.release(pair[0]);
+                bufferPool.release(pair[1]);
+            }
+            if (result && blockSize == tunedSize) {
+                bufferTuner.record(pathA, blockSize, 2 * size, System.nanoTime() - time);
+            }
+            return result;
+        }
+    }
+
+    private boolean byAsyncChannel(AsynchronousFileChannel channelA, AsynchronousFileChannel channelB, long size, ByteBuffer[][] buffers) throws IOException {
+        AsyncRead readA = new AsyncRead(channelA, buffers[0][0], 0);
+        AsyncRead readB = new AsyncRead(channelB, buffers[0][1], 0);
+        int current = 0;
+
+        for (long position = 0; position < size; current = 1 - current) {
+            int lengthA = readA.await();
+            int lengthB = readB.await();
+            if (lengthA == 0 || lengthA != lengthB) {
+                return false; // file changed while being compared
+            }
+            position += lengthA;
+
+            AsyncRead nextA = null;
+            AsyncRead nextB = null;
+            if (position < size) {
+                nextA = new AsyncRead(channelA, buffers[1 - current][0], position);
+                nextB = new AsyncRead(channelB, buffers[1 - current][1], position);
+            }
+            if (readA.buffer.flip().mismatch(readB.buffer.flip()) != -1) {
+                if (nextA != null) {
+                    nextA.await();
+                    nextB.await();
+                }
+                return false;
+            }
+            readA = nextA;
+            readB = nextB;
+        }
+        return true;
+    }
+
     private MappedByteBuffer toBuffer(FileChannel channel, long position, long size, long bufferSize) throws IOException {
         long end = Math.min(size, position + bufferSize);
         long length = end - position;
         return channel.map(FileChannel.MapMode.READ_ONLY, position, length);
     }
 
-    private byte[] hash(Path path, int bufferSize) throws IOException {
-        try (InputStream inputStream = Files.newInputStream(path, READ)) {
-            int bytesRead;
-            byte[] buffer = new byte[bufferSize];
-
-            while ((bytesRead = inputStream.read(buffer)) != -1) {
-                digest.update(buffer, 0, bytesRead);
+    private byte[] hash(Path path, int bufferSize, Hasher hasher) throws IOException {
+        ByteBuffer buffer = bufferPool.acquire(bufferSize);
+        try (FileChannel channel = FileChannel.open(path, READ)) {
+            while (channel.read(buffer.clear()) != -1) {
+                hasher.update(buffer.flip());
             }
+        } finally {
+            bufferPool.release(buffer);
         }
-        return digest.digest();
+        return hasher.digest();
     }
 
     private boolean areExplicitlyDifferent(Path pathA, Path pathB) throws IOException {
@@ -175,6 +532,80 @@ public class FileCompare {
     }
 
     public int getInternalBufferSize() {
-        return internalBufferA.length;
+        return bufferSize;
+    }
+
+    public void setSamples(int samples) {
+        this.samples = samples;
+    }
+
+    public void setSampleSize(int sampleSize) {
+        this.sampleSize = sampleSize;
+    }
+
+    public int getSampledCompares() {
+        return sampledCompares;
+    }
+
+    // fraction of file bytes compared by sampled compares; not a probability of missing a difference
+    public double getCoverage() {
+        return sampledCompares == 0 ? 1 : coverageSum / sampledCompares;
+    }
+
+    public double getMinCoverage() {
+        return minCoverage;
+    }
+
+    private static final class AsyncRead {
+        private final AsynchronousFileChannel channel;
+        private final ByteBuffer buffer;
+        private final long position;
+        private Future<Integer> future;
+
+        private AsyncRead(AsynchronousFileChannel channel, ByteBuffer buffer, long position) {
+            this.channel = channel;
+            this.buffer = buffer.clear();
+            this.position = position;
+            this.future = channel.read(buffer, position);
+        }
+
+        // waits until buffer is full or end of file is reached; returns number of bytes read
+        private int await() throws IOException {
+            try {
+                while (future.get() != -1 && buffer.hasRemaining()) {
+                    future = channel.read(buffer, position + buffer.position());
+                }
+                return buffer.position();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException(e.getMessage());
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+            }
+        }
+    }
+
+    private static final class Block {
+        private final Path path;
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+
+        private Block(Path path, FileChannel channel, ByteBuffer buffer) {
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        private void read(long position) throws IOException {
+            buffer.clear();
+            while (buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) != -1) {
+                // read until block is full or end of file is reached
+            }
+            buffer.flip();
+        }
+
+        private boolean isSame(Block other) {
+            return buffer.mismatch(other.buffer) == -1;
+        }
     }
 }
@@ -0,0 +1,95 @@
+package com.nilcaream.cptidy;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Objects;
+
+// path with attributes read once by the scan; values are not refreshed when the file changes
+public final class FileRecord {
+
+    private final Path path;
+    private final long size;
+    private final FileTime creationTime;
+    private final FileTime lastModifiedTime;
+    private final Object fileKey;
+    private final boolean regularFile;
+    private final boolean directory;
+    private final boolean link;
+
+    public FileRecord(Path path, BasicFileAttributes attributes) {
+        this(path, attributes, false);
+    }
+
+    // attributes of link target if link is true
+    public FileRecord(Path path, BasicFileAttributes attributes, boolean link) {
+        this.path = path;
+        this.size = attributes.isDirectory() ? 0 : attributes.size();
+        this.creationTime = attributes.creationTime();
+        this.lastModifiedTime = attributes.lastModifiedTime();
+        this.fileKey = attributes.fileKey();
+        this.regularFile = attributes.isRegularFile();
+        this.directory = attributes.isDirectory();
+        this.link = link;
+    }
+
+    // follows links like Files.isRegularFile and Files.size do; link flag is not set
+    public static FileRecord of(Path path) throws IOException {
+        return new FileRecord(path, Files.readAttributes(path, BasicFileAttributes.class));
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    // 0 for directories
+    public long getSize() {
+        return size;
+    }
+
+    public FileTime getCreationTime() {
+        return creationTime;
+    }
+
+    public FileTime getLastModifiedTime() {
+        return lastModifiedTime;
+    }
+
+    // null if not supported by the file system
+    public Object getFileKey() {
+        return fileKey;
+    }
+
+    public boolean isRegularFile() {
+        return regularFile;
+    }
+
+    public boolean isDirectory() {
+        return directory;
+    }
+
+    public boolean isLink() {
+        return link;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        FileRecord that = (FileRecord) o;
+        return size == that.size && regularFile == that.regularFile && directory == that.directory && link == that.link && path.equals(that.path)
+                && Objects.equals(creationTime, that.creationTime) && Objects.equals(lastModifiedTime, that.lastModifiedTime) && Objects.equals(fileKey, that.fileKey);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(path, size, creationTime, lastModifiedTime);
+    }
+
+    @Override
+    public String toString() {
+        return path.toString();
+    }
+}
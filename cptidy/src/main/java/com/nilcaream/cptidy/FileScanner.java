@@ -0,0 +1,467 @@
+package com.nilcaream.cptidy;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+// walks a tree once and keeps attributes read by the walk in records
+// with one walker entries are listed lazily on the calling thread in the same order as by Files.walk
+// with more walkers subdirectories are listed concurrently by a fork/join pool and records are passed to the caller
+// through a bounded queue; in ordered mode the order is the same as with one walker, otherwise each directory
+// is still listed before its content but subtrees are interleaved
+// links are not followed into directories
+// pruned directories are neither passed nor listed and files rejected by the filter are not passed; root is never pruned
+@Singleton
+public class FileScanner {
+
+    private static final int QUEUE_SIZE = 4096;
+    private static final int LOOKAHEAD = 256;
+    private static final Object END = new Object();
+
+    @Inject
+    private Logger logger;
+
+    // default passes everything when not injected
+    @Inject
+    private ScanFilter scanFilter = new ScanFilter();
+
+    private int walkers = 1;
+    private boolean ordered = false;
+
+    private ForkJoinPool pool;
+
+    private Set<Path> listed;
+
+    public synchronized void setWalkers(int walkers) {
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+        this.walkers = Math.max(1, walkers);
+    }
+
+    public int getWalkers() {
+        return walkers;
+    }
+
+    public boolean isOrdered() {
+        return ordered;
+    }
+
+    public void setOrdered(boolean ordered) {
+        this.ordered = ordered;
+    }
+
+    // directories and files, each directory before its content
+    public List<FileRecord> scan(Path root) throws IOException {
+        try (Stream<FileRecord> walk = walk(root)) {
+            return walk.collect(Collectors.toList());
+        }
+    }
+
+    // lazily listed directories and files; has to be closed if not fully consumed
+    public Stream<FileRecord> walk(Path root) throws IOException {
+        return walkers == 1 ? walkSequential(root) : walkParallel(root);
+    }
+
+    // listed files under root if file list is set, otherwise all files found by the walk
+    public Stream<FileRecord> files(Path root) throws IOException {
+        if (listed != null) {
+            return listedFiles(root);
+        }
+        return walk(root).filter(FileRecord::isRegularFile);
+    }
+
+    public boolean isListed() {
+        return listed != null;
+    }
+
+    // files to be used instead of walking roots; missing files are reported when listed for a root
+    public void setListed(Collection<Path> files) {
+        this.listed = files == null ? null : files.stream()
+                .map(path -> path.toAbsolutePath().normalize())
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+    }
+
+    // in list order, only regular files under root
+    private Stream<FileRecord> listedFiles(Path orgRoot) {
+        Path root = orgRoot.toAbsolutePath().normalize();
+        return listed.stream()
+                .filter(path -> path.startsWith(root))
+                .map(path -> {
+                    try {
+                        return record(path, Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS));
+                    } catch (NoSuchFileException e) {
+                        logger.warn("scan-missing", path);
+                        return null;
+                    } catch (IOException e) {
+                        logger.error("scan-error", e, path);
+                        return null;
+                    }
+                })
+                .filter(record -> record != null && record.isRegularFile() && scanFilter.passes(record));
+    }
+
+    public Stream<FileRecord> directories(Path root) throws IOException {
+        return walk(root).filter(FileRecord::isDirectory);
+    }
+
+    // each directory with regular files directly in it, in scan order; links are skipped
+    public Map<Path, List<FileRecord>> filesByDirectory(Path root) throws IOException {
+        Map<Path, List<FileRecord>> results = new LinkedHashMap<>();
+        for (FileRecord record : scan(root)) {
+            if (record.isDirectory() && !record.isLink()) {
+                results.put(record.getPath(), new ArrayList<>());
+            } else if (record.isRegularFile() && !record.isLink()) {
+                results.computeIfAbsent(record.getPath().getParent(), k -> new ArrayList<>()).add(record);
+            }
+        }
+        return results;
+    }
+
+    // same as filesByDirectory but lazily listed one directory at a time, so only directories waiting to be listed are kept
+    public Stream<Map.Entry<Path, List<FileRecord>>> streamFilesByDirectory(Path root) throws IOException {
+        Deque<Path> directories = new ArrayDeque<>();
+        if (Files.readAttributes(root, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS).isDirectory()) {
+            directories.push(root);
+        }
+        Iterator<Map.Entry<Path, List<FileRecord>>> iterator = new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return !directories.isEmpty();
+            }
+
+            @Override
+            public Map.Entry<Path, List<FileRecord>> next() {
+                Path directory = directories.pop();
+                List<FileRecord> files = new ArrayList<>();
+                List<Path> subdirectories = new ArrayList<>();
+                for (Object entry : list(directory)) {
+                    if (entry instanceof Failure) {
+                        logger.error("scan-error", ((Failure) entry).error, ((Failure) entry).path);
+                    } else if (isSubdirectory(entry)) {
+                        subdirectories.add(((FileRecord) entry).getPath());
+                    } else if (((FileRecord) entry).isRegularFile() && !((FileRecord) entry).isLink()) {
+                        files.add((FileRecord) entry);
+                    }
+                }
+                // pushed in reverse so subdirectories are taken in listing order
+                for (int i = subdirectories.size() - 1; i >= 0; i--) {
+                    directories.push(subdirectories.get(i));
+                }
+                return Map.entry(directory, files);
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED), false);
+    }
+
+    // lazily listed in the same order as by Files.walk; only entries of directories on the current path are kept
+    private Stream<FileRecord> walkSequential(Path root) {
+        Deque<Iterator<Object>> levels = new ArrayDeque<>();
+        try {
+            levels.push(List.<Object>of(record(root, Files.readAttributes(root, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS))).iterator());
+        } catch (IOException e) {
+            levels.push(List.<Object>of(new Failure(root, e)).iterator());
+        }
+        return records(() -> {
+            while (!levels.isEmpty()) {
+                Iterator<Object> level = levels.peek();
+                if (level.hasNext()) {
+                    Object entry = level.next();
+                    if (isSubdirectory(entry)) {
+                        levels.push(list(((FileRecord) entry).getPath()).iterator());
+                    }
+                    return entry;
+                }
+                levels.pop();
+            }
+            return END;
+        });
+    }
+
+    // errors are passed through the queue and logged on the calling thread
+    private Stream<FileRecord> walkParallel(Path root) throws IOException {
+        FileRecord rootRecord = record(root, Files.readAttributes(root, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS));
+        Walk walk = new Walk();
+
+        getPool().execute(() -> {
+            try {
+                walk.put(rootRecord);
+                if (rootRecord.isDirectory() && !rootRecord.isLink()) {
+                    if (ordered) {
+                        walk.emit(new ListTask(root, walk).fork().join());
+                    } else {
+                        new QueueTask(root, walk).invoke();
+                    }
+                }
+                walk.put(END);
+            } catch (CancellationException e) {
+                // closed by the caller
+            } catch (RuntimeException e) {
+                walk.put(new Failure(root, new IOException(e)));
+                walk.put(END);
+            }
+        });
+
+        return records(walk::take).onClose(walk::close);
+    }
+
+    // records taken from the source until END; failures are logged on the calling thread
+    private Stream<FileRecord> records(Supplier<Object> source) {
+        Iterator<FileRecord> iterator = new Iterator<>() {
+            private FileRecord next;
+            private boolean done;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null && !done) {
+                    Object item = source.get();
+                    if (item == END) {
+                        done = true;
+                    } else if (item instanceof Failure) {
+                        logger.error("scan-error", ((Failure) item).error, ((Failure) item).path);
+                    } else {
+                        next = (FileRecord) item;
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public FileRecord next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                FileRecord result = next;
+                next = null;
+                return result;
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED), false);
+    }
+
+    // attributes of link target as used by Files.isRegularFile; link attributes if the link is broken
+    private FileRecord record(Path path, BasicFileAttributes attributes) {
+        if (attributes.isSymbolicLink()) {
+            try {
+                return new FileRecord(path, Files.readAttributes(path, BasicFileAttributes.class), true);
+            } catch (IOException e) {
+                return new FileRecord(path, attributes, true);
+            }
+        } else {
+            return new FileRecord(path, attributes);
+        }
+    }
+
+    // entries of the directory in listing order without filtered ones; failures are kept in place of entries
+    private List<Object> list(Path directory) {
+        List<Object> entries = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path entry : stream) {
+                try {
+                    FileRecord record = record(entry, Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS));
+                    if (scanFilter.passes(record)) {
+                        entries.add(record);
+                    }
+                } catch (IOException e) {
+                    entries.add(new Failure(entry, e));
+                }
+            }
+        } catch (IOException e) {
+            entries.add(new Failure(directory, e));
+        }
+        return entries;
+    }
+
+    private static boolean isSubdirectory(Object entry) {
+        return entry instanceof FileRecord && ((FileRecord) entry).isDirectory() && !((FileRecord) entry).isLink();
+    }
+
+    private synchronized ForkJoinPool getPool() {
+        if (pool == null) {
+            pool = new ForkJoinPool(walkers, p -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+                thread.setName("walk-" + thread.getPoolIndex());
+                thread.setDaemon(true);
+                return thread;
+            }, null, false);
+        }
+        return pool;
+    }
+
+    // lists a directory and forks listing of its subdirectories while lookahead permits are left; used in ordered mode
+    // subdirectories not forked are listed by the emitting thread when their turn comes
+    private final class ListTask extends RecursiveTask<Node> {
+        private static final long serialVersionUID = 1L;
+
+        private final Path directory;
+        private final Walk walk;
+
+        private ListTask(Path directory, Walk walk) {
+            this.directory = directory;
+            this.walk = walk;
+        }
+
+        @Override
+        protected Node compute() {
+            if (walk.closed) {
+                throw new CancellationException();
+            }
+            Node node = new Node(list(directory));
+            for (Object entry : node.entries) {
+                if (isSubdirectory(entry) && walk.lookahead.tryAcquire()) {
+                    Path subdirectory = ((FileRecord) entry).getPath();
+                    node.children.put(subdirectory, new ListTask(subdirectory, walk).fork());
+                }
+            }
+            return node;
+        }
+    }
+
+    // lists a directory, passes its entries to the queue and lists subdirectories concurrently
+    private final class QueueTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Path directory;
+        private final Walk walk;
+
+        private QueueTask(Path directory, Walk walk) {
+            this.directory = directory;
+            this.walk = walk;
+        }
+
+        @Override
+        protected void compute() {
+            List<QueueTask> subtasks = new ArrayList<>();
+            for (Object entry : list(directory)) {
+                walk.put(entry);
+                if (isSubdirectory(entry)) {
+                    subtasks.add(new QueueTask(((FileRecord) entry).getPath(), walk));
+                }
+            }
+            invokeAll(subtasks);
+        }
+    }
+
+    private static final class Node {
+        private final List<Object> entries;
+        private final Map<Path, ForkJoinTask<Node>> children = new HashMap<>();
+
+        private Node(List<Object> entries) {
+            this.entries = entries;
+        }
+    }
+
+    private static final class Failure {
+        private final Path path;
+        private final IOException error;
+
+        private Failure(Path path, IOException error) {
+            this.path = path;
+            this.error = error;
+        }
+    }
+
+    // bounded queue between walkers and the caller; walkers are cancelled when the stream is closed
+    // in ordered mode at most LOOKAHEAD directories are listed ahead of the one being emitted
+    private final class Walk {
+        private final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+        private final Semaphore lookahead = new Semaphore(LOOKAHEAD);
+        private volatile boolean closed = false;
+
+        // entries in listing order, each directory followed by its subtree
+        private void emit(Node node) {
+            for (Object entry : node.entries) {
+                put(entry);
+                if (isSubdirectory(entry)) {
+                    Path subdirectory = ((FileRecord) entry).getPath();
+                    ForkJoinTask<Node> child = node.children.remove(subdirectory);
+                    if (child == null) {
+                        emit(new ListTask(subdirectory, this).invoke());
+                    } else {
+                        Node listed = child.join();
+                        lookahead.release();
+                        emit(listed);
+                    }
+                }
+            }
+        }
+
+        private void put(Object item) {
+            try {
+                ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+                    private boolean done = false;
+
+                    @Override
+                    public boolean block() throws InterruptedException {
+                        while (!done && !closed) {
+                            done = queue.offer(item, 100, MILLISECONDS);
+                        }
+                        return true;
+                    }
+
+                    @Override
+                    public boolean isReleasable() {
+                        return done || closed || (done = queue.offer(item));
+                    }
+                });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                closed = true;
+            }
+            if (closed) {
+                throw new CancellationException();
+            }
+        }
+
+        private Object take() {
+            try {
+                return queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                close();
+                return END;
+            }
+        }
+
+        private void close() {
+            closed = true;
+            queue.clear();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.nilcaream.cptidy;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+public enum HashAlgorithm {
+
+    SHA_256("sha-256", true) {
+        @Override
+        public Hasher create() {
+            try {
+                MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                return new Hasher() {
+                    @Override
+                    public void update(byte[] bytes, int offset, int length) {
+                        digest.update(bytes, offset, length);
+                    }
+
+                    @Override
+                    public void update(ByteBuffer buffer) {
+                        digest.update(buffer);
+                    }
+
+                    @Override
+                    public byte[] digest() {
+                        return digest.digest();
+                    }
+                };
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    },
+
+    XXH64("xxh64", false) {
+        @Override
+        public Hasher create() {
+            return new XxHash64();
+        }
+    },
+
+    CRC32C("crc32c", false) {
+        @Override
+        public Hasher create() {
+            java.util.zip.CRC32C crc = new java.util.zip.CRC32C();
+            return new Hasher() {
+                @Override
+                public void update(byte[] bytes, int offset, int length) {
+                    crc.update(bytes, offset, length);
+                }
+
+                @Override
+                public void update(ByteBuffer buffer) {
+                    crc.update(buffer);
+                }
+
+                @Override
+                public byte[] digest() {
+                    byte[] result = ByteBuffer.allocate(Integer.BYTES).putInt((int) crc.getValue()).array();
+                    crc.reset();
+                    return result;
+                }
+            };
+        }
+    };
+
+    private final String label;
+    private final boolean collisionResistant;
+
+    HashAlgorithm(String label, boolean collisionResistant) {
+        this.label = label;
+        this.collisionResistant = collisionResistant;
+    }
+
+    public abstract Hasher create();
+
+    public String getLabel() {
+        return label;
+    }
+
+    public boolean isCollisionResistant() {
+        return collisionResistant;
+    }
+
+    public static HashAlgorithm of(String label) {
+        return Arrays.stream(values())
+                .filter(v -> v.label.equalsIgnoreCase(label))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Unknown hash " + label + ". Use one of: " + Arrays.stream(values()).map(v -> v.label).collect(Collectors.joining(" "))));
+    }
+
+    // full content digest decides what is deleted, so colliding algorithms are accepted only for the quick stage
+    public static HashAlgorithm ofFull(String label) {
+        HashAlgorithm algorithm = of(label);
+        if (!algorithm.collisionResistant) {
+            throw new IllegalArgumentException("Hash " + label + " is not collision resistant and can be used as quick-hash only. Use one of: " + Arrays.stream(values()).filter(v -> v.collisionResistant).map(v -> v.label).collect(Collectors.joining(" ")));
+        }
+        return algorithm;
+    }
+}
@@ -0,0 +1,261 @@
+package com.nilcaream.cptidy;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+@Singleton
+public class HashEngine {
+
+    @Inject
+    private Logger logger;
+
+    @Inject
+    private BufferPool bufferPool;
+
+    @Inject
+    private BufferTuner bufferTuner;
+
+    private int threads = 1;
+    private int bufferSize = 1024 * 1024;
+
+    private ExecutorService executor;
+
+    private final AtomicLong bytesRead = new AtomicLong();
+    private long readNanos = 0;
+
+    // each worker thread owns its digests; buffers are taken from the pool for each file
+    private final ThreadLocal<Worker> workers = ThreadLocal.withInitial(Worker::new);
+
+    public synchronized void setThreads(int threads) {
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+        this.threads = Math.max(1, threads);
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = Math.max(1024, bufferSize);
+    }
+
+    // digest of whole content
+    public String hash(Path path, HashAlgorithm algorithm) throws IOException {
+        long time = System.nanoTime();
+        try {
+            return hash(path, algorithm, -1);
+        } finally {
+            readNanos += System.nanoTime() - time;
+        }
+    }
+
+    // digest of whole content; each block read is also passed to the listener as a read-only buffer
+    public String hash(Path path, HashAlgorithm algorithm, Consumer<ByteBuffer> listener) throws IOException {
+        long time = System.nanoTime();
+        try {
+            return hash(path, algorithm, -1, listener);
+        } finally {
+            readNanos += System.nanoTime() - time;
+        }
+    }
+
+    // digest of first and last regionSize bytes; covers whole file if it is not larger than 2 * regionSize
+    public String hashHeadTail(Path path, HashAlgorithm algorithm, int regionSize) throws IOException {
+        long time = System.nanoTime();
+        try {
+            return hash(path, algorithm, regionSize);
+        } finally {
+            readNanos += System.nanoTime() - time;
+        }
+    }
+
+    private String hash(Path path, HashAlgorithm algorithm, int regionSize) throws IOException {
+        return hash(path, algorithm, regionSize, null);
+    }
+
+    private String hash(Path path, HashAlgorithm algorithm, int regionSize, Consumer<ByteBuffer> listener) throws IOException {
+        int size = bufferTuner.isEnabled() ? bufferTuner.bufferSize(path, bufferSize, Files.size(path)) : bufferSize;
+        ByteBuffer buffer = bufferPool.acquire(size);
+        Worker worker = workers.get();
+        long bytes = worker.bytes;
+        long time = System.nanoTime();
+        try {
+            String digest = worker.hash(path, algorithm, regionSize, buffer, listener);
+            // only reads that filled the buffer are measured
+            if (regionSize < 0 && worker.bytes - bytes >= size) {
+                bufferTuner.record(path, size, worker.bytes - bytes, System.nanoTime() - time);
+            }
+            return digest;
+        } finally {
+            bufferPool.release(buffer);
+        }
+    }
+
+    public Map<Path, String> hash(Stream<Path> paths, HashAlgorithm algorithm, BiConsumer<Path, String> onComplete) {
+        return run(paths, algorithm, -1, onComplete);
+    }
+
+    public Map<Path, String> hashHeadTail(Stream<Path> paths, HashAlgorithm algorithm, int regionSize, BiConsumer<Path, String> onComplete) {
+        return run(paths, algorithm, regionSize, onComplete);
+    }
+
+    // paths are hashed by worker threads; callbacks are called on the calling thread in completion order
+    // files that could not be read are logged and not included in the result
+    private Map<Path, String> run(Stream<Path> paths, HashAlgorithm algorithm, int regionSize, BiConsumer<Path, String> onComplete) {
+        Map<Path, String> results = new HashMap<>();
+        long time = System.nanoTime();
+
+        if (threads == 1) {
+            paths.forEach(path -> complete(results, execute(path, algorithm, regionSize), onComplete));
+        } else {
+            CompletionService<Result> completionService = new ExecutorCompletionService<>(getExecutor());
+            int[] count = new int[]{0};
+            paths.forEach(path -> {
+                completionService.submit(() -> execute(path, algorithm, regionSize));
+                count[0]++;
+            });
+            for (int i = 0; i < count[0]; i++) {
+                complete(results, take(completionService), onComplete);
+            }
+        }
+        readNanos += System.nanoTime() - time;
+        return results;
+    }
+
+    private Result execute(Path path, HashAlgorithm algorithm, int regionSize) {
+        try {
+            return new Result(path, hash(path, algorithm, regionSize), null);
+        } catch (IOException e) {
+            return new Result(path, null, e);
+        }
+    }
+
+    private Result take(CompletionService<Result> completionService) {
+        try {
+            Future<Result> future = completionService.take();
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private void complete(Map<Path, String> results, Result result, BiConsumer<Path, String> onComplete) {
+        if (result.error != null) {
+            logger.error("hash-error", result.error, result.path);
+        } else {
+            results.put(result.path, result.digest);
+            onComplete.accept(result.path, result.digest);
+        }
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            AtomicInteger counter = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "hash-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return executor;
+    }
+
+    private static final class Result {
+        private final Path path;
+        private final String digest;
+        private final IOException error;
+
+        private Result(Path path, String digest, IOException error) {
+            this.path = path;
+            this.digest = digest;
+            this.error = error;
+        }
+    }
+
+    // total bytes hashed and wall time spent in hashing calls
+    public long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    public long getReadNanos() {
+        return readNanos;
+    }
+
+    private final class Worker {
+        private final Map<HashAlgorithm, Hasher> hashers = new EnumMap<>(HashAlgorithm.class);
+        private long bytes = 0;
+
+        // regionSize < 0 means whole content
+        private String hash(Path path, HashAlgorithm algorithm, int regionSize, ByteBuffer buffer, Consumer<ByteBuffer> listener) throws IOException {
+            Hasher hasher = hashers.computeIfAbsent(algorithm, HashAlgorithm::create);
+            try (FileChannel channel = FileChannel.open(path, READ)) {
+                long size = channel.size();
+                if (regionSize < 0) {
+                    update(hasher, channel, buffer, 0, size, listener);
+                } else {
+                    update(hasher, channel, buffer, 0, Math.min(size, regionSize), listener);
+                    update(hasher, channel, buffer, Math.max(regionSize, size - regionSize), size, listener);
+                }
+            } catch (IOException e) {
+                hasher.digest(); // reset partial state
+                throw e;
+            }
+            return toHex(hasher.digest());
+        }
+
+        private void update(Hasher hasher, FileChannel channel, ByteBuffer buffer, long start, long end, Consumer<ByteBuffer> listener) throws IOException {
+            long position = start;
+            while (position < end) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), end - position));
+                int bytesRead = channel.read(buffer, position);
+                if (bytesRead == -1) {
+                    break;
+                }
+                buffer.flip();
+                if (listener != null) {
+                    listener.accept(buffer.asReadOnlyBuffer());
+                }
+                hasher.update(buffer);
+                position += bytesRead;
+                HashEngine.this.bytesRead.addAndGet(bytesRead);
+                bytes += bytesRead;
+            }
+        }
+
+        private String toHex(byte[] bytes) {
+            StringBuilder builder = new StringBuilder(bytes.length * 2);
+            for (byte b : bytes) {
+                builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return builder.toString();
+        }
+    }
+}
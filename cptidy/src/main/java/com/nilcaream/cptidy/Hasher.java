@@ -0,0 +1,15 @@
+package com.nilcaream.cptidy;
+
+import java.nio.ByteBuffer;
+
+// streaming content digest; instances are not thread-safe
+public interface Hasher {
+
+    void update(byte[] bytes, int offset, int length);
+
+    // consumes all remaining bytes of the buffer
+    void update(ByteBuffer buffer);
+
+    // returns digest of all bytes passed since the last call and resets state
+    byte[] digest();
+}
@@ -0,0 +1,62 @@
+package com.nilcaream.cptidy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+// counts by row (e.g. month) and column (e.g. status); only columns with counts are formatted
+public class Histogram {
+
+    private final String label;
+    private final Set<String> columns = new LinkedHashSet<>();
+    private final Map<String, Map<String, Integer>> rows = new TreeMap<>();
+
+    // columns in the given order, others in order of first use
+    public Histogram(String label, String... columns) {
+        this.label = label;
+        this.columns.addAll(Arrays.asList(columns));
+    }
+
+    public void add(String row, String column) {
+        columns.add(column);
+        rows.computeIfAbsent(row, k -> new HashMap<>()).merge(column, 1, Integer::sum);
+    }
+
+    public int get(String row, String column) {
+        return rows.getOrDefault(row, Map.of()).getOrDefault(column, 0);
+    }
+
+    public boolean hasData() {
+        return !rows.isEmpty();
+    }
+
+    // header and one line per row with right aligned counts
+    public List<String> format() {
+        List<String> used = columns.stream()
+                .filter(column -> rows.values().stream().anyMatch(row -> row.containsKey(column)))
+                .collect(Collectors.toList());
+        int first = Math.max(label.length(), rows.keySet().stream().mapToInt(String::length).max().orElse(0));
+
+        List<String> lines = new ArrayList<>();
+        StringBuilder header = new StringBuilder(pad(label, first, false));
+        used.forEach(column -> header.append(" | ").append(column));
+        lines.add(header.toString());
+        rows.forEach((row, counts) -> {
+            StringBuilder line = new StringBuilder(pad(row, first, false));
+            used.forEach(column -> line.append(" | ").append(pad(String.valueOf(counts.getOrDefault(column, 0)), column.length(), true)));
+            lines.add(line.toString());
+        });
+        return lines;
+    }
+
+    private String pad(String text, int length, boolean left) {
+        String spaces = " ".repeat(Math.max(0, length - text.length()));
+        return left ? spaces + text : text + spaces;
+    }
+}
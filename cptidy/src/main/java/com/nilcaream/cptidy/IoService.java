@@ -5,23 +5,24 @@ import com.nilcaream.utilargs.Option;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributeView;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileTime;
 import java.time.Instant;
 import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static java.lang.String.format;
-import static java.nio.file.StandardOpenOption.READ;
-import static java.util.Collections.emptyList;
 import static java.util.Optional.ofNullable;
 
 @Singleton
@@ -39,6 +40,21 @@ public class IoService {
     @Inject
     private Io io;
 
+    @Inject
+    private HashEngine hashEngine;
+
+    @Inject
+    private DigestCache digestCache;
+
+    @Inject
+    private ZeroScanner zeroScanner;
+
+    @Inject
+    private FileAnalyzer fileAnalyzer;
+
+    @Inject
+    private ScanFilter scanFilter;
+
     @Option(alternative = "delete")
     private boolean delete = false;
 
@@ -54,12 +70,30 @@ public class IoService {
     @Option(alternative = "fast")
     private boolean fast = false;
 
+    @Option(alternative = "verify")
+    private boolean verify = false;
+
+    @Option(alternative = "compare")
+    private String compare = CompareMode.STREAM.getLabel();
+
+    @Option(alternative = "quick-hash")
+    private String quickHash = HashAlgorithm.XXH64.getLabel();
+
+    @Option(alternative = "hash")
+    private String hash = HashAlgorithm.SHA_256.getLabel();
+
+    @Option(alternative = "order")
+    private String order = ReadOrder.INODE.getLabel();
+
     private Set<String> ignoredFiles = new HashSet<>();
 
+    private final Set<Path> vacated = new LinkedHashSet<>();
+
     // 1 - yyyy, 2 - MM, 3 - dd
     private static final Pattern NAME_EXTENSION = Pattern.compile("([12][0-9]{3})([01][0-9])([0123][0-9])-.+");
     private static final Instant DEFAULT_TIMESTAMP = Instant.parse("2000-01-01T12:00:00.00Z");
     private static final Pattern COPY_SUFFIX = Pattern.compile("(.+?)(-[0-9])*");
+    private static final int HEAD_TAIL_SIZE = 64 * 1024;
 
     public Path buildMatchingTarget(Path source, Path targetRoot) throws IOException {
         Path result = ofNullable(nameResolver.resolve(source)).map(r -> r.resolve(targetRoot)).orElse(null);
@@ -67,12 +101,154 @@ public class IoService {
         return result;
     }
 
+    public Path buildMatchingTarget(FileRecord source, Path targetRoot) throws IOException {
+        return ofNullable(resolve(source)).map(r -> r.resolve(targetRoot)).orElse(null);
+    }
+
+    // null if it is not possible to build target name
+    public NameResolver.Result resolve(FileRecord source) throws IOException {
+        NameResolver.Result result = nameResolver.resolve(source);
+        logger.stat("total", source);
+        return result;
+    }
+
+    public boolean isSupported(Path path) {
+        return nameResolver.isSupported(path);
+    }
+
+    public boolean isCanonical(Path path) {
+        return nameResolver.isCanonical(path);
+    }
+
     public boolean haveSameContent(Path source, Path target) throws IOException {
         if (fast) {
             return fileCompare.fast(source, target);
         } else {
-            return fileCompare.byteByByte(source, target);
+            switch (CompareMode.of(compare)) {
+                case MMAP:
+                    long offset = fileCompare.mismatch(source, target);
+                    if (offset != -1) {
+                        logger.debug("mismatch", source, "<->", target, "at", offset);
+                    }
+                    return offset == -1;
+                case ASYNC:
+                    return fileCompare.byAsyncChannel(source, target);
+                default:
+                    return fileCompare.byteByByte(source, target);
+            }
+        }
+    }
+
+    // target digest is cached so targets already read by findSameContent are not read again
+    public boolean haveSameTargetContent(Path source, Path target) throws IOException {
+        if (fast || !digestCache.isEnabled()) {
+            return haveSameContent(source, target);
+        } else {
+            return Files.exists(source) && haveSameSize(source, target)
+                    && sourceDigest(source).equals(digestCache.digest(target, HashAlgorithm.ofFull(hash)));
+        }
+    }
+
+    // source is read by the analysis pass if enabled so its exif date is taken from the same read
+    private String sourceDigest(Path source) throws IOException {
+        if (fileAnalyzer.isEnabled()) {
+            return fileAnalyzer.analyze(source, HashAlgorithm.ofFull(hash)).getDigest();
+        } else {
+            return hashEngine.hash(source, HashAlgorithm.ofFull(hash));
+        }
+    }
+
+    private boolean haveSameSize(Path source, Path target) throws IOException {
+        return Files.exists(target) && Files.size(source) == Files.size(target);
+    }
+
+    // same size files -> head and tail digest (quick hash) -> full digest (hash) or fast compare
+    // each stage only processes groups that still collide; returns groups of at least 2 same content files
+    // files fully covered by head and tail are compared byte by byte unless quick hash is collision resistant
+    // a group that cannot be read (e.g. file removed during the run) is logged and left out, other groups are processed
+    public List<List<Path>> groupBySameContent(Collection<List<Path>> sizeGroups) throws IOException {
+        List<List<Path>> groups = new ArrayList<>();
+        for (List<Path> sizeGroup : sizeGroups) {
+            try {
+                groups.add(distinctFiles(sizeGroup));
+            } catch (IOException e) {
+                logger.error("error", e, sizeGroup);
+            }
+        }
+        HashAlgorithm quickAlgorithm = HashAlgorithm.of(quickHash);
+        groups = split(groups, "head-tail", paths -> hashEngine.hashHeadTail(paths, quickAlgorithm, HEAD_TAIL_SIZE, this::logHash));
+
+        if (fast) {
+            groups = splitByCompare(groups, "fast", fileCompare::fast);
+        } else {
+            List<List<Path>> large = groups.stream().filter(g -> size(g.get(0)) > 2L * HEAD_TAIL_SIZE).collect(Collectors.toList());
+            groups.removeAll(large);
+            if (!quickAlgorithm.isCollisionResistant()) {
+                groups = splitByCompare(groups, "compare", fileCompare::byteByByte);
+            }
+            HashAlgorithm algorithm = HashAlgorithm.ofFull(hash);
+            groups.addAll(split(large, "digest", paths -> hashEngine.hash(paths, algorithm, this::logHash)));
+        }
+        return groups;
+    }
+
+    private void logHash(Path path, String digest) {
+        logger.debug("hash", path, ":", digest);
+    }
+
+    // all paths are hashed together in read order so that workers are busy across groups
+    private List<List<Path>> split(List<List<Path>> groups, String stage, Function<Stream<Path>, Map<Path, String>> hasher) {
+        long bytesRead = hashEngine.getBytesRead();
+        long time = System.nanoTime();
+        Map<Path, String> pathToKey = hasher.apply(ordered(groups.stream().flatMap(List::stream).collect(Collectors.toList())).stream());
+        time = System.nanoTime() - time;
+        bytesRead = hashEngine.getBytesRead() - bytesRead;
+        List<List<Path>> results = new ArrayList<>();
+        for (List<Path> group : groups) {
+            Map<String, List<Path>> keyToPaths = new LinkedHashMap<>();
+            group.stream()
+                    .filter(pathToKey::containsKey)
+                    .forEach(path -> keyToPaths.computeIfAbsent(pathToKey.get(path), k -> new ArrayList<>()).add(path));
+            keyToPaths.values().stream().filter(v -> v.size() > 1).forEach(results::add);
+        }
+        logger.debug("stage", stage, ":", groups.size(), "->", results.size(), "groups",
+                format("%.1f MB at %.1f MB/s", bytesRead / (1024.0 * 1024.0), time == 0 ? 0 : bytesRead / (1024.0 * 1024.0) / (time / 1000000000.0)));
+        return results;
+    }
+
+    private List<List<Path>> splitByCompare(List<List<Path>> groups, String stage, ContentComparison comparison) {
+        List<List<Path>> results = new ArrayList<>();
+        for (List<Path> group : groups) {
+            try {
+                results.addAll(splitByCompare(group, comparison));
+            } catch (IOException e) {
+                logger.error("error", e, group);
+            }
         }
+        logger.debug("stage", stage, ":", groups.size(), "->", results.size(), "groups");
+        return results;
+    }
+
+    private List<List<Path>> splitByCompare(List<Path> group, ContentComparison comparison) throws IOException {
+        List<List<Path>> results = new ArrayList<>();
+        List<Path> remaining = ordered(group);
+        while (remaining.size() > 1) {
+            Path first = remaining.get(0);
+            List<Path> same = new ArrayList<>(List.of(first));
+            List<Path> different = new ArrayList<>();
+            for (Path path : remaining.subList(1, remaining.size())) {
+                if (comparison.test(first, path)) {
+                    same.add(path);
+                } else {
+                    different.add(path);
+                }
+            }
+            if (same.size() > 1) {
+                results.add(same);
+            }
+            remaining = different;
+        }
+        return results;
     }
 
     public boolean haveSameAttributes(Path source, Path target) throws IOException {
@@ -156,6 +332,23 @@ public class IoService {
 
         if (delete) {
             io.delete(path);
+            vacated(path);
+        }
+    }
+
+    // deletes duplicate of original; if verify is set content is compared byte by byte just before actual deletion
+    public void delete(Path path, Path original) throws IOException {
+        if (isVerified(path, original)) {
+            delete(path);
+        }
+    }
+
+    private boolean isVerified(Path path, Path original) throws IOException {
+        if (delete && verify && !fileCompare.byteByByte(path, original)) {
+            logger.warn("verify-failed", path, "<->", original);
+            return false;
+        } else {
+            return true;
         }
     }
 
@@ -188,14 +381,18 @@ public class IoService {
         assertDifferent(fileA, fileB);
 
         Path path = selectToDelete(fileA, fileB);
+        if (!isVerified(path, path == fileA ? fileB : fileA)) {
+            return;
+        }
         logger.infoStat("delete", path);
 
         if (delete) {
             io.delete(path);
+            vacated(path);
         }
     }
 
-    public void retainOne(Collection<Path> paths) throws IOException {
+    public Path retainOne(Collection<Path> paths) throws IOException {
         if (paths.size() < 2) {
             throw new IllegalArgumentException("Should provide more than 1 path");
         }
@@ -221,50 +418,30 @@ public class IoService {
                 .map(Map.Entry::getKey)
                 .orElseThrow();
 
+        List<Path> verified = new ArrayList<>(paths);
+        if (delete && verify) {
+            verified = fileCompare.partition(new ArrayList<>(paths)).stream().filter(v -> v.contains(best)).findFirst().orElseThrow();
+        }
+
         for (Path path : paths) {
             if (path == best) {
                 logger.infoStat("retain", path, ": score", pathToScore.get(path));
+            } else if (!verified.contains(path)) {
+                logger.warn("verify-failed", path, "<->", best);
             } else {
                 logger.infoStat("delete", path, ": score", pathToScore.get(path));
 
                 if (delete) {
                     io.delete(path);
+                    vacated(path);
                 }
             }
         }
+        return best;
     }
 
-    public int countZeroBlocks(Path path, byte[] buffer) throws IOException {
-        int bytesRead = 0;
-        int counter = 0;
-
-        boolean lastBlock = true;
-
-        try (InputStream inputStream = Files.newInputStream(path, READ)) {
-            while ((bytesRead = inputStream.read(buffer)) != -1) {
-                boolean hasNonZeroByte = false;
-
-                for (int i = 0; i < bytesRead; i++) {
-                    if (buffer[i] != 0) {
-                        hasNonZeroByte = true;
-                        break;
-                    }
-                }
-
-                if (!hasNonZeroByte) {
-                    counter++;
-                }
-
-                if (bytesRead < buffer.length) {
-                    if (!lastBlock) {
-                        logger.warn("not-full", path, "Bytes read < buffer size", buffer.length);
-                    }
-                    lastBlock = false;
-                }
-            }
-        }
-
-        return counter;
+    public int countZeroBlocks(Path path, int blockSize) throws IOException {
+        return zeroScanner.scan(path, blockSize).getBlocks();
     }
 
     private String removeCopySuffix(String text) {
@@ -332,9 +509,31 @@ public class IoService {
 
         if (move) {
             io.move(source, target);
+            if (!sameParent) {
+                vacated(source);
+            }
+        }
+    }
+
+    // parent directory of a file moved or deleted by this run
+    private void vacated(Path file) {
+        Path parent = file.toAbsolutePath().normalize().getParent();
+        if (parent != null) {
+            vacated.add(parent);
         }
     }
 
+    // directories under root vacated by moves and deletes so far, deepest first; they are not returned again
+    public List<Path> takeVacated(Path orgRoot) {
+        Path root = orgRoot.toAbsolutePath().normalize();
+        List<Path> results = vacated.stream()
+                .filter(directory -> directory.startsWith(root))
+                .sorted(Comparator.comparingInt(Path::getNameCount).reversed().thenComparing(Comparator.naturalOrder()))
+                .collect(Collectors.toList());
+        vacated.removeAll(results);
+        return results;
+    }
+
     public Path copy(Path source, Path orgTarget) throws IOException {
         if (io.isSameFile(source, orgTarget)) {
             throw new IOException("Both paths are equal for copy " + source + " > " + orgTarget);
@@ -375,6 +574,85 @@ public class IoService {
         }
     }
 
+    // single post-order walk; each directory is listed once and deleted once its children are handled
+    // same rules as deleteEmpty for each directory under root; root itself is not deleted
+    public void deleteEmptyTree(Path orgRoot, Consumer<Path> progress) throws IOException {
+        Path root = orgRoot.normalize().toAbsolutePath();
+        Deque<Remaining> stack = new ArrayDeque<>();
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) {
+                if (!directory.equals(root) && scanFilter.isPruned(directory)) {
+                    // not scanned so not known to be empty
+                    stack.element().count++;
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                progress.accept(directory);
+                stack.push(new Remaining());
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                if (attributes.isRegularFile() && (attributes.size() == 0 || ignoredFiles.contains(file.getFileName().toString()))) {
+                    stack.element().ignored.add(file);
+                } else {
+                    stack.element().count++;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                logger.error("error", e, file);
+                stack.element().count++;
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path directory, IOException e) throws IOException {
+                Remaining remaining = stack.pop();
+                if (e != null) {
+                    logger.error("error", e, directory);
+                } else if (!directory.equals(root) && deleteEmptyDirectory(directory, remaining)) {
+                    return FileVisitResult.CONTINUE;
+                }
+                if (!stack.isEmpty()) {
+                    stack.element().count++;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    // true if directory was deleted or would be deleted without delete option
+    private boolean deleteEmptyDirectory(Path directory, Remaining remaining) throws IOException {
+        if (remaining.count > 0 || (!remaining.ignored.isEmpty() && !delete)) {
+            if (remaining.count == 0) {
+                for (Path file : remaining.ignored) {
+                    logger.infoStat("delete ignored", file);
+                }
+            }
+            logger.infoStat("not empty", directory, ":", remaining.count + remaining.ignored.size(), "elements");
+            return false;
+        }
+        for (Path file : remaining.ignored) {
+            logger.infoStat("delete ignored", file);
+            io.delete(file);
+        }
+        logger.infoStat("delete empty", directory);
+        if (delete) {
+            io.delete(directory);
+            return true;
+        }
+        return false;
+    }
+
+    private static final class Remaining {
+        private int count;
+        private final List<Path> ignored = new ArrayList<>();
+    }
+
     private boolean deleteIgnoredFiles(List<Path> files) throws IOException {
         if (files.isEmpty()) {
             return true;
@@ -454,26 +732,114 @@ public class IoService {
         this.fast = fast;
     }
 
+    public boolean isVerify() {
+        return verify;
+    }
+
+    public void setVerify(boolean verify) {
+        this.verify = verify;
+    }
+
+    public String getCompare() {
+        return compare;
+    }
+
+    public void setCompare(String compare) {
+        this.compare = compare;
+    }
+
+    public String getQuickHash() {
+        return quickHash;
+    }
+
+    public void setQuickHash(String quickHash) {
+        this.quickHash = quickHash;
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    public void setHash(String hash) {
+        this.hash = hash;
+    }
+
+    public String getOrder() {
+        return order;
+    }
+
+    public void setOrder(String order) {
+        this.order = order;
+    }
+
     public void setIgnoredFiles(Set<String> ignoredFiles) {
         this.ignoredFiles = ignoredFiles;
     }
 
-    public List<Path> haveSameContent(List<Path> paths) throws IOException {
-        List<List<Path>> results = new ArrayList<>();
+    // groups of at least 2 same content files; all files are read together in a single pass unless fast is set
+    public List<List<Path>> haveSameContent(List<Path> paths) throws IOException {
+        List<Path> distinct = distinctFiles(paths);
+        if (fast) {
+            return splitByCompare(distinct, fileCompare::fast);
+        } else {
+            return fileCompare.partition(distinct).stream().filter(v -> v.size() > 1).collect(Collectors.toList());
+        }
+    }
 
-        for (int a = 0; a < paths.size(); a++) {
-            Path pathA = paths.get(a);
-            List<Path> duplicates = new ArrayList<>();
-            duplicates.add(pathA);
-            for (int b = a + 1; b < paths.size(); b++) {
-                Path pathB = paths.get(b);
-                if (haveSameContent(pathA, pathB)) {
-                    duplicates.add(pathB);
+    // first candidate with the same content as source or null; candidates are expected in read order (see ordered)
+    // candidates are compared by cached digests so each of them is read at most once per run if cache is enabled,
+    // otherwise they are compared with the source in a single pass that stops at the first difference of each of them
+    public Path findSameContent(Path source, List<Path> candidates) throws IOException {
+        if (!fast && digestCache.isEnabled()) {
+            String digest = null;
+            for (Path candidate : candidates) {
+                if (Files.exists(source) && haveSameSize(source, candidate) && !Files.isSameFile(source, candidate)) {
+                    digest = digest == null ? sourceDigest(source) : digest;
+                    if (digest.equals(digestCache.digest(candidate, HashAlgorithm.ofFull(hash)))) {
+                        return candidate;
+                    }
                 }
             }
-            results.add(duplicates);
+            return null;
+        } else if (fast) {
+            List<Path> paths = new ArrayList<>(List.of(source));
+            paths.addAll(candidates);
+            return haveSameContent(paths).stream()
+                    .filter(v -> v.contains(source))
+                    .flatMap(Collection::stream)
+                    .filter(p -> p != source)
+                    .findFirst()
+                    .orElse(null);
+        } else {
+            List<Path> others = new ArrayList<>();
+            for (Path candidate : candidates) {
+                if (!Files.exists(candidate) || !Files.isSameFile(source, candidate)) {
+                    others.add(candidate);
+                }
+            }
+            return fileCompare.findSame(source, others);
         }
+    }
+
+    // paths in order set through order option; done once per candidate set as it may read attributes of each path
+    public List<Path> ordered(Collection<Path> paths) {
+        return ReadOrder.of(order).sort(paths);
+    }
+
+    // removes links to already listed files
+    private List<Path> distinctFiles(List<Path> paths) throws IOException {
+        Set<Object> keys = new HashSet<>();
+        List<Path> results = new ArrayList<>();
+        for (Path path : paths) {
+            Object key = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+            if (keys.add(key == null ? path.toRealPath() : key)) {
+                results.add(path);
+            }
+        }
+        return results;
+    }
 
-        return results.stream().filter(v -> v.size() > 1).max(Comparator.comparing(List::size)).orElse(emptyList());
+    private interface ContentComparison {
+        boolean test(Path pathA, Path pathB) throws IOException;
     }
 }
@@ -20,7 +20,25 @@ public class IoTest {
     @Inject
     private Logger logger;
 
-    private FileCompare fileCompare = new FileCompare();
+    @Inject
+    private HashEngine hashEngine;
+
+    @Inject
+    private FileCompare fileCompare;
+
+    // hashing throughput per algorithm; file is hashed twice and second (cached) read is reported
+    public void testHashes(Path root, int fileSize) throws IOException {
+        Path path = testCreate(root, fileSize);
+        for (HashAlgorithm algorithm : HashAlgorithm.values()) {
+            hashEngine.hash(path, algorithm);
+            long time = nanoTime();
+            String digest = hashEngine.hash(path, algorithm);
+            time = nanoTime() - time;
+            double gigabytesPerSecond = (fileSize / (1024.0 * 1024.0 * 1024.0)) / (time / 1000000000.0);
+            logger.info(algorithm.getLabel(), format(": % 10.3f ms | %7.3f MB | %7.3f GB/s | %s", time / 1000000.0, fileSize / (1024.0 * 1024.0), gigabytesPerSecond, digest));
+        }
+        Files.delete(path);
+    }
 
     public void test2(Path root, int fileSize, int bufferSize) throws IOException {
         Path test = testCreate(root, fileSize);
@@ -31,6 +49,8 @@ public class IoTest {
 
         fast(copy1, copy2);
         byteByByte(copy1, copy2, bufferSize);
+        mismatch(copy1, copy2);
+        byAsyncChannel(copy1, copy2);
         Files.delete(copy1);
         Files.delete(copy2);
     }
@@ -64,6 +84,12 @@ public class IoTest {
         pathB = testCreate(root, fileSize);
         createCacheClearFiles(root, fileSize);
         fast(pathA, pathB);
+
+        // -----
+        pathA = testCreate(root, fileSize);
+        pathB = testCreate(root, fileSize);
+        createCacheClearFiles(root, fileSize);
+        byAsyncChannel(pathA, pathB);
     }
 
     private void createCacheClearFiles(Path root, int fileSize) throws IOException {
@@ -104,6 +130,22 @@ public class IoTest {
         logger.info("channel", format(": % 10.3f ms | %7.3f MB | %s", time / 1000000.0, size, result));
     }
 
+    private void byAsyncChannel(Path pathA, Path pathB) throws IOException {
+        double size = Files.size(pathA) / (1024.0 * 1024.0);
+        long time = nanoTime();
+        boolean result = fileCompare.byAsyncChannel(pathA, pathB);
+        time = nanoTime() - time;
+        logger.info("async", format(": % 10.3f ms | %7.3f MB | %s", time / 1000000.0, size, result));
+    }
+
+    private void mismatch(Path pathA, Path pathB) throws IOException {
+        double size = Files.size(pathA) / (1024.0 * 1024.0);
+        long time = nanoTime();
+        long result = fileCompare.mismatch(pathA, pathB);
+        time = nanoTime() - time;
+        logger.info("mismatch", format(": % 10.3f ms | %7.3f MB | %s", time / 1000000.0, size, result));
+    }
+
     private void byteByByte(Path pathA, Path pathB, int bufferSize) throws IOException {
         double size = Files.size(pathA) / (1024.0 * 1024.0);
         long time = nanoTime();
@@ -42,6 +42,10 @@ public class Logger {
         statistics.add(formatStatus(status).trim(), size(path));
     }
 
+    public void stat(String status, FileRecord record) {
+        statistics.add(formatStatus(status).trim(), record.getSize());
+    }
+
     public void info(String status, Object... messages) {
         logger.info("{} {}", formatStatus(status), asString(messages));
     }
@@ -52,6 +56,18 @@ public class Logger {
         statistics.add(formattedStatus.trim(), size(path));
     }
 
+    public void infoStat(String status, FileRecord record, Object... messages) {
+        String formattedStatus = formatStatus(status);
+        logger.info("{} {} {}", formattedStatus, record, asString(messages));
+        statistics.add(formattedStatus.trim(), record.getSize());
+    }
+
+    public void debugStat(String status, FileRecord record, Object... messages) {
+        String formattedStatus = formatStatus(status);
+        logger.debug("{} {} {}", formattedStatus, record, asString(messages));
+        statistics.add(formattedStatus.trim(), record.getSize());
+    }
+
     public void debugStat(String status, Path path, Object... messages) throws IOException {
         String formattedStatus = formatStatus(status);
         logger.debug("{} {} {}", formattedStatus, path.toString(), asString(messages));
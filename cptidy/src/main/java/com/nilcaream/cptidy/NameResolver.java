@@ -6,6 +6,7 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
 import java.text.SimpleDateFormat;
 import java.util.Objects;
 import java.util.Set;
@@ -38,7 +39,18 @@ public class NameResolver {
         explicitDates.add(patternText, date);
     }
 
+    // attributes are read only if the name alone does not determine the date
     public Result resolve(Path input) throws IOException {
+        return resolve(input, null);
+    }
+
+    // attributes are taken from the record so the file is not stat again
+    public Result resolve(FileRecord record) throws IOException {
+        return resolve(record.getPath(), record);
+    }
+
+    // record is null if attributes were not read yet
+    private Result resolve(Path input, FileRecord record) throws IOException {
         StatusHolder status = new StatusHolder();
 
         String inputNameExtension = input.getFileName().toString();
@@ -48,7 +60,7 @@ public class NameResolver {
         Result result = null;
         Matcher matcher = NAME_EXTENSION.matcher(inputNameExtension);
 
-        DateString explicitDate = explicitDates.getDate(input);
+        DateString explicitDate = record == null ? explicitDates.getDate(input) : explicitDates.getDate(record);
 
         if (explicitDate != null) {
             result = new Result(explicitDate.asShort(), overrideDate(status, inputNameExtension, explicitDate.asLong()));
@@ -57,12 +69,12 @@ public class NameResolver {
             result = new Result(date.asShort(), prefixDate(status, nameExtension, matcher));
         } else if (EXTENSIONS.contains(extension)) {
             DateString date = exifService.getDate(input);
-            BasicFileAttributes attr = Files.readAttributes(input, BasicFileAttributes.class);
-            String fileDateTime = attr.creationTime().toString().substring(0, 7);
+            FileTime creationTime = record == null ? Files.readAttributes(input, BasicFileAttributes.class).creationTime() : record.getCreationTime();
+            String fileDateTime = creationTime.toString().substring(0, 7);
             if (date != null) {
                 result = new Result(date.asShort(), exifDate(status, nameExtension, date.asLong()));
             } else if (input.getFileName().toString().contains(fileDateTime)) {
-                String longDate = attr.creationTime().toString().substring(0, 10);
+                String longDate = creationTime.toString().substring(0, 10);
                 date = new DateString(longDate);
                 result = new Result(date.asShort(), fileDate(status, nameExtension.replace(longDate, "-").replace(fileDateTime, "-"), date.asLong()));
             } else if (DIRECTORY_DATE.matcher(input.getParent().getFileName().toString()).matches()) {
@@ -74,19 +86,51 @@ public class NameResolver {
 
         if (result == null && EXTENSIONS.contains(extension)) {
             // if result is not determined then actual status does not matter
-            logger.infoStat(Status.NO_MATCH.name(), input);
+            infoStat(Status.NO_MATCH.name(), input, record);
         } else if (result == null) {
             // unknown extension
-            logger.infoStat(Status.UNKNOWN.name(), input);
+            infoStat(Status.UNKNOWN.name(), input, record);
         } else if (result.file.equals(inputNameExtension)) {
-            logger.debugStat(Status.NO_NAME_CHANGE.name(), input);
+            if (record == null) {
+                logger.debugStat(Status.NO_NAME_CHANGE.name(), input);
+            } else {
+                logger.debugStat(Status.NO_NAME_CHANGE.name(), record);
+            }
+            result = new Result(result.parent, result.file, Status.NO_NAME_CHANGE);
         } else {
-            logger.infoStat(status.status.name(), input, ":", result);
+            infoStat(status.status.name(), input, record, ":", result);
+            result = new Result(result.parent, result.file, status.status);
         }
 
         return result;
     }
 
+    private void infoStat(String status, Path input, FileRecord record, Object... messages) throws IOException {
+        if (record == null) {
+            logger.infoStat(status, input, messages);
+        } else {
+            logger.infoStat(status, record, messages);
+        }
+    }
+
+    // false if file type is unknown; file of known type can still have no date
+    public boolean isSupported(Path input) {
+        return EXTENSIONS.contains(getExtension(prepareOnly(input.getFileName().toString())));
+    }
+
+    // true if resolve would keep the name and the yyyy-MM parent, e.g. 2020-01/20200115-name.jpg
+    // only the name is checked, so exif and file attributes are not read; explicit dates take precedence
+    public boolean isCanonical(Path input) {
+        String nameExtension = input.getFileName().toString();
+        Path parent = input.getParent();
+        Matcher matcher = NAME_EXTENSION.matcher(nameExtension);
+        if (parent == null || parent.getFileName() == null || !EXTENSIONS.contains(getExtension(nameExtension)) || !matcher.matches() || explicitDates.matches(input)) {
+            return false;
+        }
+        return toDateString(matcher).asShort().equals(parent.getFileName().toString())
+                && prepareOnly(applyDate(matcher.group(2), matcher.group(1) + matcher.group(6))).equals(nameExtension);
+    }
+
     public Path buildUniquePath(Path input) {
         Path root = input.getParent();
         String nameExtension = prepareOnly(input.getFileName().toString());
@@ -227,16 +271,27 @@ public class NameResolver {
     public static final class Result {
         private final String parent;
         private final String file;
+        private final Status status;
 
         public Result(String parent, String file) {
+            this(parent, file, null);
+        }
+
+        private Result(String parent, String file, Status status) {
             this.parent = parent;
             this.file = file;
+            this.status = status;
         }
 
         public Path resolve(Path root) {
             return root.resolve(parent).resolve(file);
         }
 
+        // how the name was resolved, e.g. "exif date" or "no name change"; not part of equality
+        public String getStatus() {
+            return status == null ? null : status.name().toLowerCase().replace('_', ' ');
+        }
+
         @Override
         public boolean equals(Object o) {
             if (this == o) return true;
@@ -0,0 +1,149 @@
+package com.nilcaream.cptidy;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+// reads beginning of the next files of a sequential walk on a background thread so that they are in page cache
+// when processed; covers exif headers and first compare blocks
+@Singleton
+public class ReadAhead {
+
+    private static final int CHUNK_SIZE = 256 * 1024;
+
+    @Inject
+    private Logger logger;
+
+    @Inject
+    private BufferPool bufferPool;
+
+    private int depth = 0;
+    private long bytes = 64 * 1024 * 1024;
+
+    private ExecutorService executor;
+
+    // index of the last file taken by the current walk; files already taken are not read ahead
+    private final AtomicReference<AtomicLong> current = new AtomicReference<>(new AtomicLong(-1));
+    private final AtomicInteger files = new AtomicInteger();
+    private final AtomicLong bytesRead = new AtomicLong();
+
+    // walk with next depth files read ahead; same walk if read-ahead is disabled
+    public Stream<Path> ahead(Stream<Path> walk) {
+        return ahead(walk, Function.identity());
+    }
+
+    public <T> Stream<T> ahead(Stream<T> walk, Function<T, Path> toPath) {
+        if (depth <= 0) {
+            return walk;
+        }
+        Iterator<T> source = walk.iterator();
+        Deque<T> window = new ArrayDeque<>();
+        // one counter per walk; tasks left from the previous walk see it as fully consumed and stop
+        AtomicLong consumed = new AtomicLong(-1);
+        current.getAndSet(consumed).set(Long.MAX_VALUE);
+        long[] submitted = new long[]{-1};
+
+        Iterator<T> iterator = new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                fill();
+                return !window.isEmpty();
+            }
+
+            @Override
+            public T next() {
+                fill();
+                if (window.isEmpty()) {
+                    throw new NoSuchElementException();
+                }
+                consumed.incrementAndGet();
+                return window.poll();
+            }
+
+            private void fill() {
+                while (window.size() <= depth && source.hasNext()) {
+                    T next = source.next();
+                    window.add(next);
+                    long index = ++submitted[0];
+                    Path path = toPath.apply(next);
+                    getExecutor().execute(() -> read(path, index, consumed));
+                }
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED), false).onClose(() -> {
+            consumed.set(Long.MAX_VALUE);
+            walk.close();
+        });
+    }
+
+    private void read(Path path, long index, AtomicLong consumed) {
+        if (index <= consumed.get()) {
+            return; // already processed
+        }
+        ByteBuffer buffer = bufferPool.acquire(CHUNK_SIZE);
+        try (FileChannel channel = FileChannel.open(path, READ)) {
+            long limit = Math.min(channel.size(), bytes / depth);
+            long position = 0;
+            int count;
+            while (position < limit && index > consumed.get() && (count = channel.read(buffer.clear().limit((int) Math.min(CHUNK_SIZE, limit - position)), position)) != -1) {
+                position += count;
+            }
+            files.incrementAndGet();
+            bytesRead.addAndGet(position);
+        } catch (IOException e) {
+            logger.debug("read-ahead", path, e.getMessage()); // file is read again and error is reported by the walk
+        } finally {
+            bufferPool.release(buffer);
+        }
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "read-ahead");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return executor;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public void setDepth(int depth) {
+        this.depth = depth;
+    }
+
+    public void setBytes(long bytes) {
+        this.bytes = bytes;
+    }
+
+    public int getFiles() {
+        return files.get();
+    }
+
+    public long getBytesRead() {
+        return bytesRead.get();
+    }
+}
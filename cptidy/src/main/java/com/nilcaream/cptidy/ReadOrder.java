@@ -0,0 +1,91 @@
+package com.nilcaream.cptidy;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+public enum ReadOrder {
+
+    // as listed
+    NONE("none"),
+
+    // grouped by parent directory, files sorted by name
+    DIRECTORY("directory"),
+
+    // sorted by device and inode number so reads on rotational media are close to sequential
+    // files without inode number (e.g. non unix file systems) are sorted by directory and placed last
+    INODE("inode");
+
+    // unix file key format: (dev=803,ino=1234567)
+    private static final Pattern UNIX_FILE_KEY = Pattern.compile("\\(dev=(\\w+),ino=(\\d+)\\)");
+
+    private static final Comparator<Key> DIRECTORY_ORDER = Comparator
+            .comparing((Key k) -> String.valueOf(k.path.getParent()))
+            .thenComparing(k -> String.valueOf(k.path.getFileName()));
+
+    private static final Comparator<Key> INODE_ORDER = Comparator
+            .comparing((Key k) -> k.device == null)
+            .thenComparing(k -> k.device == null ? "" : k.device)
+            .thenComparingLong(k -> k.inode)
+            .thenComparing(DIRECTORY_ORDER);
+
+    private final String label;
+
+    ReadOrder(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public List<Path> sort(Collection<Path> paths) {
+        if (this == NONE) {
+            return new ArrayList<>(paths);
+        } else {
+            return paths.stream()
+                    .map(path -> new Key(path, this == INODE))
+                    .sorted(this == INODE ? INODE_ORDER : DIRECTORY_ORDER)
+                    .map(k -> k.path)
+                    .collect(Collectors.toList());
+        }
+    }
+
+    public static ReadOrder of(String label) {
+        return Arrays.stream(values())
+                .filter(v -> v.label.equalsIgnoreCase(label))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Unknown read order " + label + ". Use one of: " + Arrays.stream(values()).map(v -> v.label).collect(Collectors.joining(" "))));
+    }
+
+    private static final class Key {
+        private final Path path;
+        private String device;
+        private long inode;
+
+        private Key(Path path, boolean readInode) {
+            this.path = path;
+            if (readInode) {
+                try {
+                    Object fileKey = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+                    Matcher matcher = UNIX_FILE_KEY.matcher(String.valueOf(fileKey));
+                    if (matcher.matches()) {
+                        device = matcher.group(1);
+                        inode = Long.parseLong(matcher.group(2));
+                    }
+                } catch (IOException e) {
+                    // no inode; directory order is used
+                }
+            }
+        }
+    }
+}
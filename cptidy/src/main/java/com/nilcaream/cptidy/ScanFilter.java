@@ -0,0 +1,133 @@
+package com.nilcaream.cptidy;
+
+import javax.inject.Singleton;
+import java.nio.file.FileSystem;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+// filters applied by the walk; pruned directories are not listed and rejected files are not passed on
+// globs without a slash are matched with file or directory name, others with the absolute path
+@Singleton
+public class ScanFilter {
+
+    private List<String> includes = List.of();
+    private List<String> excludes = List.of();
+    private List<String> prunes = List.of();
+    private Set<String> extensions = Set.of();
+    private long minSize = 0;
+    private long maxSize = Long.MAX_VALUE;
+
+    private final Map<FileSystem, Map<String, PathMatcher>> matchers = new HashMap<>();
+
+    private final AtomicLong skippedFiles = new AtomicLong();
+    private final AtomicLong prunedDirectories = new AtomicLong();
+
+    public boolean isEnabled() {
+        return !includes.isEmpty() || !excludes.isEmpty() || !prunes.isEmpty() || !extensions.isEmpty() || minSize > 0 || maxSize < Long.MAX_VALUE;
+    }
+
+    // record passed on by the walk; counts pruned directories and skipped files, other records are passed as they are
+    public boolean passes(FileRecord record) {
+        if (record.isDirectory() && !record.isLink()) {
+            if (isPruned(record.getPath())) {
+                prunedDirectories.incrementAndGet();
+                return false;
+            }
+        } else if (record.isRegularFile() && !accepts(record.getPath(), record.getSize())) {
+            skippedFiles.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    // directory is not descended into; root of the walk is never pruned
+    public boolean isPruned(Path directory) {
+        return !prunes.isEmpty() && matches(prunes, directory);
+    }
+
+    public boolean accepts(Path file, BasicFileAttributes attributes) {
+        return accepts(file, attributes.size());
+    }
+
+    public boolean accepts(Path file, long size) {
+        return size >= minSize && size <= maxSize
+                && (extensions.isEmpty() || extensions.contains(extension(file)))
+                && (includes.isEmpty() || matches(includes, file))
+                && (excludes.isEmpty() || !matches(excludes, file));
+    }
+
+    private boolean matches(List<String> globs, Path path) {
+        for (String glob : globs) {
+            if (glob.contains("/")) {
+                if (matcher(path, glob).matches(path.toAbsolutePath())) {
+                    return true;
+                }
+            } else if (path.getFileName() != null && matcher(path, glob).matches(path.getFileName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private synchronized PathMatcher matcher(Path path, String glob) {
+        return matchers.computeIfAbsent(path.getFileSystem(), k -> new HashMap<>())
+                .computeIfAbsent(glob, k -> path.getFileSystem().getPathMatcher("glob:" + glob));
+    }
+
+    // lower case with dot, e.g. .jpg; empty if there is no extension
+    private String extension(Path file) {
+        String name = file.getFileName().toString();
+        int index = name.lastIndexOf('.');
+        return index == -1 ? "" : name.substring(index).toLowerCase(Locale.ROOT);
+    }
+
+    public void setIncludes(Collection<String> includes) {
+        this.includes = List.copyOf(includes);
+    }
+
+    public void setExcludes(Collection<String> excludes) {
+        this.excludes = List.copyOf(excludes);
+    }
+
+    public void setPrunes(Collection<String> prunes) {
+        this.prunes = List.copyOf(prunes);
+    }
+
+    // with or without leading dot, case insensitive
+    public void setExtensions(Collection<String> extensions) {
+        this.extensions = extensions.stream()
+                .map(e -> e.toLowerCase(Locale.ROOT))
+                .map(e -> e.startsWith(".") ? e : "." + e)
+                .collect(Collectors.toSet());
+    }
+
+    public void setMinSize(long minSize) {
+        this.minSize = minSize;
+    }
+
+    public void setMaxSize(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public long getSkippedFiles() {
+        return skippedFiles.get();
+    }
+
+    public long getPrunedDirectories() {
+        return prunedDirectories.get();
+    }
+
+    @Override
+    public String toString() {
+        return "include " + includes + " exclude " + excludes + " prune " + prunes + " extensions " + extensions + " size " + minSize + "-" + (maxSize == Long.MAX_VALUE ? "" : maxSize);
+    }
+}
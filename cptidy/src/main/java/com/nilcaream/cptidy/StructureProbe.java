@@ -0,0 +1,191 @@
+package com.nilcaream.cptidy;
+
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Set;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+// checks structural markers of jpeg and mp4/mov files using positional reads of head, tail and segment/box headers only
+// files that are not recognized are reported as unknown so they can be checked by other means
+@Singleton
+public class StructureProbe {
+
+    private static final int TAIL_SIZE = 4096;
+    private static final int MAX_HEADERS = 10000;
+    private static final Set<String> TOP_LEVEL_BOXES = Set.of("ftyp", "moov", "mdat", "free", "skip", "wide", "pnot", "uuid", "meta", "pdin", "moof", "mfra", "styp", "sidx", "udta");
+
+    private boolean enabled = false;
+
+    public Result probe(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, READ)) {
+            long size = channel.size();
+            ByteBuffer head = read(channel, 0, 12);
+            if (head.remaining() >= 3 && (head.get(0) & 0xFF) == 0xFF && (head.get(1) & 0xFF) == 0xD8 && (head.get(2) & 0xFF) == 0xFF) {
+                return probeJpeg(channel, size);
+            } else if (head.remaining() >= 8 && TOP_LEVEL_BOXES.contains(type(head, 4))) {
+                return probeBoxes(channel, size);
+            } else {
+                return Result.UNKNOWN;
+            }
+        }
+    }
+
+    // SOI and APPn segment chain up to start of scan; EOI within the tail
+    private Result probeJpeg(FileChannel channel, long size) throws IOException {
+        long position = 2;
+        for (int i = 0; i < MAX_HEADERS; i++) {
+            ByteBuffer header = read(channel, position, 4);
+            if (header.remaining() < 2 || (header.get(0) & 0xFF) != 0xFF) {
+                return Result.suspicious("broken segment chain at " + position);
+            }
+            int marker = header.get(1) & 0xFF;
+            if (marker == 0xFF) {
+                position++; // fill byte
+            } else if (marker == 0xDA) {
+                break; // start of scan; entropy coded data follows
+            } else if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) {
+                position += 2;
+            } else if (marker == 0xD9) {
+                return Result.suspicious("end of image before start of scan at " + position);
+            } else if (header.remaining() < 4) {
+                return Result.suspicious("segment header beyond end of file at " + position);
+            } else {
+                int length = header.getShort(2) & 0xFFFF;
+                if (length < 2 || position + 2 + length > size) {
+                    return Result.suspicious("segment " + Integer.toHexString(marker) + " at " + position + " exceeds file length");
+                }
+                position += 2 + length;
+            }
+        }
+
+        ByteBuffer tail = read(channel, Math.max(position, size - TAIL_SIZE), TAIL_SIZE);
+        if (isZero(tail)) {
+            return Result.suspicious("zero filled tail");
+        }
+        for (int i = tail.limit() - 2; i >= 0; i--) {
+            if ((tail.get(i) & 0xFF) == 0xFF && (tail.get(i + 1) & 0xFF) == 0xD9) {
+                return Result.OK;
+            }
+        }
+        return Result.suspicious("no end of image marker in last " + tail.limit() + " bytes");
+    }
+
+    // top level boxes sizes have to add up to the file length; moov box is required
+    private Result probeBoxes(FileChannel channel, long size) throws IOException {
+        long position = 0;
+        boolean moov = false;
+        for (int i = 0; i < MAX_HEADERS && position < size; i++) {
+            ByteBuffer header = read(channel, position, 16);
+            if (header.remaining() < 8) {
+                return Result.suspicious("box header beyond end of file at " + position);
+            }
+            long boxSize = header.getInt(0) & 0xFFFFFFFFL;
+            String type = type(header, 4);
+            if (!isPrintable(type)) {
+                return Result.suspicious("invalid box type at " + position);
+            }
+            if (boxSize == 1) {
+                if (header.remaining() < 16) {
+                    return Result.suspicious("box header beyond end of file at " + position);
+                }
+                boxSize = header.getLong(8);
+            } else if (boxSize == 0) {
+                boxSize = size - position; // box extends to the end of file
+            }
+            if (boxSize < 8) {
+                return Result.suspicious("invalid " + type + " box size " + boxSize + " at " + position);
+            }
+            if (position + boxSize > size) {
+                return Result.suspicious(type + " box at " + position + " exceeds file length by " + (position + boxSize - size) + " bytes");
+            }
+            moov |= type.equals("moov");
+            position += boxSize;
+        }
+        if (position != size) {
+            return Result.suspicious("too many boxes");
+        }
+        if (!moov) {
+            return Result.suspicious("no moov box");
+        }
+        if (isZero(read(channel, Math.max(0, size - TAIL_SIZE), TAIL_SIZE))) {
+            return Result.suspicious("zero filled tail");
+        }
+        return Result.OK;
+    }
+
+    private ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) > 0) {
+            // positional read until buffer is full or end of file
+        }
+        return buffer.flip();
+    }
+
+    private String type(ByteBuffer buffer, int offset) {
+        char[] chars = new char[4];
+        for (int i = 0; i < 4; i++) {
+            chars[i] = (char) (buffer.get(offset + i) & 0xFF);
+        }
+        return new String(chars);
+    }
+
+    // letters, digits, space and latin-1 symbols such as copyright sign used by quicktime
+    private boolean isPrintable(String type) {
+        return type.chars().allMatch(c -> (c >= 0x20 && c < 0x7F) || c >= 0xA0);
+    }
+
+    private boolean isZero(ByteBuffer buffer) {
+        for (int i = buffer.position(); i < buffer.limit(); i++) {
+            if (buffer.get(i) != 0) {
+                return false;
+            }
+        }
+        return buffer.hasRemaining();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public static final class Result {
+        private static final Result OK = new Result(Status.OK, "");
+        private static final Result UNKNOWN = new Result(Status.UNKNOWN, "unknown format");
+
+        private final Status status;
+        private final String reason;
+
+        private Result(Status status, String reason) {
+            this.status = status;
+            this.reason = reason;
+        }
+
+        private static Result suspicious(String reason) {
+            return new Result(Status.SUSPICIOUS, reason);
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+
+        @Override
+        public String toString() {
+            return status + " " + reason;
+        }
+    }
+
+    public enum Status {
+        OK, SUSPICIOUS, UNKNOWN
+    }
+}
@@ -0,0 +1,186 @@
+package com.nilcaream.cptidy;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+// watches directory trees and passes new or modified files once their size and modification time stop changing
+// directories created under watched roots are watched too; files already present in them are passed as new
+@Singleton
+public class Watcher {
+
+    @Inject
+    private Logger logger;
+
+    @Inject
+    private FileScanner fileScanner;
+
+    // default passes everything when not injected
+    @Inject
+    private ScanFilter scanFilter = new ScanFilter();
+
+    private long settle = 5000;
+
+    private volatile WatchService service;
+
+    public long getSettle() {
+        return settle;
+    }
+
+    // time in milliseconds during which file size and modification time have to stay the same
+    public void setSettle(long settle) {
+        this.settle = Math.max(0, settle);
+    }
+
+    // blocks until stopped or interrupted
+    public void watch(Collection<Path> roots, Consumer<Path> onStable) throws IOException {
+        Map<WatchKey, Path> directories = new HashMap<>();
+        Set<Path> registered = new HashSet<>();
+        Map<Path, Pending> pending = new LinkedHashMap<>();
+        long tick = Math.max(100, Math.min(1000, settle / 2));
+
+        try (WatchService watchService = roots.iterator().next().getFileSystem().newWatchService()) {
+            service = watchService;
+            for (Path root : roots) {
+                register(root, directories, registered, pending, false);
+            }
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = watchService.poll(tick, MILLISECONDS);
+                while (key != null) {
+                    handle(key, directories, registered, pending);
+                    key = watchService.poll();
+                }
+                settled(pending).forEach(onStable);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // stopped
+        } finally {
+            service = null;
+        }
+        logger.info("watch", "stopped", pending.size(), "files pending");
+    }
+
+    public void stop() throws IOException {
+        WatchService watchService = service;
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+
+    private void handle(WatchKey key, Map<WatchKey, Path> directories, Set<Path> registered, Map<Path, Pending> pending) {
+        Path directory = directories.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (directory == null) {
+                continue;
+            }
+            if (event.kind() == OVERFLOW) {
+                // events were lost, check whole directory again
+                logger.warn("watch", "overflow", directory);
+                register(directory, directories, registered, pending, true);
+            } else {
+                Path path = directory.resolve((Path) event.context());
+                if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                    if (event.kind() == ENTRY_CREATE && !scanFilter.isPruned(path)) {
+                        register(path, directories, registered, pending, true);
+                    }
+                } else {
+                    pending.put(path, new Pending());
+                }
+            }
+        }
+        if (!key.reset()) {
+            registered.remove(directories.remove(key));
+        }
+    }
+
+    // registers directory tree; files already in it are added to pending if requested
+    // registered directories are kept in a set as well, so that each one is checked in constant time
+    // a directory which cannot be registered is reported and the rest of the tree is still registered
+    private void register(Path root, Map<WatchKey, Path> directories, Set<Path> registered, Map<Path, Pending> pending, boolean existing) {
+        try (Stream<FileRecord> records = fileScanner.walk(root)) {
+            for (FileRecord record : records.collect(Collectors.toList())) {
+                if (record.isDirectory() && !record.isLink()) {
+                    if (!registered.contains(record.getPath())) {
+                        try {
+                            directories.put(record.getPath().register(service, ENTRY_CREATE, ENTRY_MODIFY), record.getPath());
+                            registered.add(record.getPath());
+                            logger.debug("watch", record.getPath());
+                        } catch (IOException e) {
+                            logger.error("watch-error", e, record.getPath());
+                        }
+                    }
+                } else if (existing && record.isRegularFile()) {
+                    pending.put(record.getPath(), new Pending());
+                }
+            }
+        } catch (IOException e) {
+            logger.error("watch-error", e, root);
+        }
+    }
+
+    // files which did not change since the last check for at least settle time; removed from pending
+    private List<Path> settled(Map<Path, Pending> pending) {
+        List<Path> results = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<Path, Pending>> iterator = pending.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Path, Pending> entry = iterator.next();
+            Pending state = entry.getValue();
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(entry.getKey(), BasicFileAttributes.class);
+                if (!attributes.isRegularFile() || !scanFilter.accepts(entry.getKey(), attributes)) {
+                    iterator.remove();
+                } else if (attributes.size() != state.size || !attributes.lastModifiedTime().equals(state.modified)) {
+                    state.size = attributes.size();
+                    state.modified = attributes.lastModifiedTime();
+                    state.since = now;
+                } else if (now - state.since >= settle) {
+                    iterator.remove();
+                    results.add(entry.getKey());
+                }
+            } catch (NoSuchFileException e) {
+                // moved or deleted before it settled
+                iterator.remove();
+            } catch (IOException e) {
+                logger.error("watch-error", e, entry.getKey());
+                iterator.remove();
+            }
+        }
+        return results;
+    }
+
+    private static final class Pending {
+        private long size = -1;
+        private FileTime modified;
+        private long since;
+    }
+}
@@ -0,0 +1,170 @@
+package com.nilcaream.cptidy;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+// streaming xxHash64 with seed 0; https://github.com/Cyan4973/xxHash/blob/dev/doc/xxhash_spec.md
+public class XxHash64 implements Hasher {
+
+    private static final long PRIME_1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME_2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME_3 = 0x165667B19E3779F9L;
+    private static final long PRIME_4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME_5 = 0x27D4EB2F165667C5L;
+
+    private static final VarHandle LONG_VIEW = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle INT_VIEW = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle BUFFER_LONG_VIEW = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final byte[] stripe = new byte[32];
+    private int stripeLength;
+    private long totalLength;
+
+    private long v1;
+    private long v2;
+    private long v3;
+    private long v4;
+
+    public XxHash64() {
+        reset();
+    }
+
+    private void reset() {
+        v1 = PRIME_1 + PRIME_2;
+        v2 = PRIME_2;
+        v3 = 0;
+        v4 = -PRIME_1;
+        stripeLength = 0;
+        totalLength = 0;
+    }
+
+    @Override
+    public void update(byte[] bytes, int offset, int length) {
+        totalLength += length;
+        int position = offset;
+        int end = offset + length;
+
+        if (stripeLength > 0) {
+            int count = Math.min(32 - stripeLength, length);
+            System.arraycopy(bytes, position, stripe, stripeLength, count);
+            stripeLength += count;
+            position += count;
+            if (stripeLength < 32) {
+                return;
+            }
+            consume(stripe, 0);
+            stripeLength = 0;
+        }
+
+        while (end - position >= 32) {
+            consume(bytes, position);
+            position += 32;
+        }
+
+        stripeLength = end - position;
+        System.arraycopy(bytes, position, stripe, 0, stripeLength);
+    }
+
+    @Override
+    public void update(ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            update(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            buffer.position(buffer.limit());
+            return;
+        }
+        totalLength += buffer.remaining();
+
+        if (stripeLength > 0) {
+            int count = Math.min(32 - stripeLength, buffer.remaining());
+            buffer.get(stripe, stripeLength, count);
+            stripeLength += count;
+            if (stripeLength < 32) {
+                return;
+            }
+            consume(stripe, 0);
+            stripeLength = 0;
+        }
+
+        int position = buffer.position();
+        while (buffer.limit() - position >= 32) {
+            v1 = round(v1, (long) BUFFER_LONG_VIEW.get(buffer, position));
+            v2 = round(v2, (long) BUFFER_LONG_VIEW.get(buffer, position + 8));
+            v3 = round(v3, (long) BUFFER_LONG_VIEW.get(buffer, position + 16));
+            v4 = round(v4, (long) BUFFER_LONG_VIEW.get(buffer, position + 24));
+            position += 32;
+        }
+        buffer.position(position);
+
+        stripeLength = buffer.remaining();
+        buffer.get(stripe, 0, stripeLength);
+    }
+
+    private void consume(byte[] bytes, int offset) {
+        v1 = round(v1, getLong(bytes, offset));
+        v2 = round(v2, getLong(bytes, offset + 8));
+        v3 = round(v3, getLong(bytes, offset + 16));
+        v4 = round(v4, getLong(bytes, offset + 24));
+    }
+
+    @Override
+    public byte[] digest() {
+        long hash;
+        if (totalLength >= 32) {
+            hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            hash = merge(hash, v1);
+            hash = merge(hash, v2);
+            hash = merge(hash, v3);
+            hash = merge(hash, v4);
+        } else {
+            hash = PRIME_5;
+        }
+        hash += totalLength;
+
+        int position = 0;
+        while (stripeLength - position >= 8) {
+            hash ^= round(0, getLong(stripe, position));
+            hash = Long.rotateLeft(hash, 27) * PRIME_1 + PRIME_4;
+            position += 8;
+        }
+        if (stripeLength - position >= 4) {
+            hash ^= (getInt(stripe, position) & 0xFFFFFFFFL) * PRIME_1;
+            hash = Long.rotateLeft(hash, 23) * PRIME_2 + PRIME_3;
+            position += 4;
+        }
+        while (position < stripeLength) {
+            hash ^= (stripe[position] & 0xFFL) * PRIME_5;
+            hash = Long.rotateLeft(hash, 11) * PRIME_1;
+            position++;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= PRIME_2;
+        hash ^= hash >>> 29;
+        hash *= PRIME_3;
+        hash ^= hash >>> 32;
+
+        reset();
+        return ByteBuffer.allocate(Long.BYTES).putLong(hash).array();
+    }
+
+    private static long round(long accumulator, long input) {
+        accumulator += input * PRIME_2;
+        accumulator = Long.rotateLeft(accumulator, 31);
+        return accumulator * PRIME_1;
+    }
+
+    private static long merge(long hash, long accumulator) {
+        hash ^= round(0, accumulator);
+        return hash * PRIME_1 + PRIME_4;
+    }
+
+    private static long getLong(byte[] bytes, int offset) {
+        return (long) LONG_VIEW.get(bytes, offset);
+    }
+
+    private static int getInt(byte[] bytes, int offset) {
+        return (int) INT_VIEW.get(bytes, offset);
+    }
+}
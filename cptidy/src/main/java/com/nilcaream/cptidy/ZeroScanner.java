@@ -0,0 +1,202 @@
+package com.nilcaream.cptidy;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+// finds blocks of zeros in memory mapped windows; each block is compared with a block of zeros by vectorised mismatch
+// blocks are aligned to file offsets (multiples of block size); last block can be shorter
+@Singleton
+public class ZeroScanner {
+
+    private static final int MAP_WINDOW = 256 * 1024 * 1024;
+
+    @Inject
+    private Logger logger;
+
+    private int threads = 1;
+
+    private ExecutorService executor;
+
+    private final Map<Integer, ByteBuffer> zeroBlocks = new ConcurrentHashMap<>();
+
+    public synchronized void setThreads(int threads) {
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+        this.threads = Math.max(1, threads);
+    }
+
+    public Result scan(Path path, int blockSize) throws IOException {
+        ByteBuffer zeros = zeros(blockSize);
+        Result result = new Result(blockSize);
+
+        try (FileChannel channel = FileChannel.open(path, READ)) {
+            result.size = channel.size();
+            long windowSize = Math.max(1, MAP_WINDOW / blockSize) * (long) blockSize;
+            for (long position = 0; position < result.size; position += windowSize) {
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(windowSize, result.size - position));
+                for (int offset = 0; offset < window.limit(); offset += blockSize) {
+                    int length = Math.min(blockSize, window.limit() - offset);
+                    ByteBuffer block = window.duplicate().position(offset).limit(offset + length);
+                    if (block.mismatch(zeros.duplicate().limit(length)) == -1) {
+                        result.add(position + offset, length);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private ByteBuffer zeros(int blockSize) {
+        return zeroBlocks.computeIfAbsent(blockSize, ByteBuffer::allocateDirect);
+    }
+
+    // files are scanned by worker threads; callbacks are called on the calling thread in completion order
+    // number of files being scanned at the same time is limited to 2 * threads
+    public void scan(Stream<Path> paths, int blockSize, BiConsumer<Path, Result> onComplete) {
+        if (threads == 1) {
+            paths.forEach(path -> complete(execute(path, blockSize), onComplete));
+        } else {
+            CompletionService<Task> completionService = new ExecutorCompletionService<>(getExecutor());
+            Iterator<Path> iterator = paths.iterator();
+            int running = 0;
+            while (iterator.hasNext()) {
+                if (running == 2 * threads) {
+                    complete(take(completionService), onComplete);
+                    running--;
+                }
+                Path path = iterator.next();
+                completionService.submit(() -> execute(path, blockSize));
+                running++;
+            }
+            for (; running > 0; running--) {
+                complete(take(completionService), onComplete);
+            }
+        }
+    }
+
+    private Task execute(Path path, int blockSize) {
+        try {
+            return new Task(path, scan(path, blockSize), null);
+        } catch (IOException e) {
+            return new Task(path, null, e);
+        }
+    }
+
+    private Task take(CompletionService<Task> completionService) {
+        try {
+            return completionService.take().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private void complete(Task task, BiConsumer<Path, Result> onComplete) {
+        if (task.error != null) {
+            logger.error("zero-scan-error", task.error, task.path);
+        } else {
+            onComplete.accept(task.path, task.result);
+        }
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            AtomicInteger counter = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "zero-scan-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return executor;
+    }
+
+    private static final class Task {
+        private final Path path;
+        private final Result result;
+        private final IOException error;
+
+        private Task(Path path, Result result, IOException error) {
+            this.path = path;
+            this.result = result;
+            this.error = error;
+        }
+    }
+
+    public static final class Result {
+        private final int blockSize;
+        private final List<long[]> runs = new ArrayList<>();
+        private long size;
+        private int blocks;
+        private long zeroBytes;
+
+        private Result(int blockSize) {
+            this.blockSize = blockSize;
+        }
+
+        // consecutive zero blocks are merged into a single run
+        private void add(long offset, int length) {
+            blocks++;
+            zeroBytes += length;
+            long[] last = runs.isEmpty() ? null : runs.get(runs.size() - 1);
+            if (last != null && last[0] + last[1] == offset) {
+                last[1] += length;
+            } else {
+                runs.add(new long[]{offset, length});
+            }
+        }
+
+        public int getBlockSize() {
+            return blockSize;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public int getBlocks() {
+            return blocks;
+        }
+
+        public long getZeroBytes() {
+            return zeroBytes;
+        }
+
+        // offset and length of each run of zero blocks
+        public List<long[]> getRuns() {
+            return Collections.unmodifiableList(runs);
+        }
+
+        // offset:length of first runs
+        public String formatRuns(int limit) {
+            String text = runs.stream().limit(limit).map(r -> r[0] + ":" + r[1]).collect(Collectors.joining(" "));
+            return runs.size() > limit ? text + " and " + (runs.size() - limit) + " more" : text;
+        }
+    }
+}
@@ -12,6 +12,7 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
 
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.*;
@@ -31,6 +32,15 @@ class ActionsTest {
     @Mock
     private Marker marker;
 
+    @Spy
+    private ReadAhead readAhead = new ReadAhead();
+
+    @Spy
+    private FileScanner fileScanner = new FileScanner();
+
+    @Spy
+    private DirectoryIndex directoryIndex = new DirectoryIndex();
+
     private Io io = new Io();
     private Path root = Jimfs.newFileSystem(Configuration.unix()).getPath("unix").toAbsolutePath();
 
@@ -55,18 +65,18 @@ class ActionsTest {
 
         Path noMatch = io.write(source.resolve("no-match"), "test");
 
-        given(ioService.buildMatchingTarget(fail, target)).willThrow(IOException.class);
+        given(ioService.buildMatchingTarget(FileRecord.of(fail), target)).willThrow(IOException.class);
 
-        given(ioService.buildMatchingTarget(matchToMove, target)).willReturn(matchToMoveResolved);
-        given(ioService.buildMatchingTarget(matchToDelete, target)).willReturn(matchToDeleteResolved);
-        given(ioService.buildMatchingTarget(same, target)).willReturn(sameResolved);
-        given(ioService.buildMatchingTarget(noMatch, target)).willReturn(null);
+        given(ioService.buildMatchingTarget(FileRecord.of(matchToMove), target)).willReturn(matchToMoveResolved);
+        given(ioService.buildMatchingTarget(FileRecord.of(matchToDelete), target)).willReturn(matchToDeleteResolved);
+        given(ioService.buildMatchingTarget(FileRecord.of(same), target)).willReturn(sameResolved);
+        given(ioService.buildMatchingTarget(FileRecord.of(noMatch), target)).willReturn(null);
 
         given(ioService.isSameFile(matchToMove, matchToMoveResolved)).willReturn(false);
-        given(ioService.haveSameContent(matchToMove, matchToMoveResolved)).willReturn(false);
+        given(ioService.haveSameTargetContent(matchToMove, matchToMoveResolved)).willReturn(false);
 
         given(ioService.isSameFile(matchToDelete, matchToDeleteResolved)).willReturn(false);
-        given(ioService.haveSameContent(matchToDelete, matchToDeleteResolved)).willReturn(true);
+        given(ioService.haveSameTargetContent(matchToDelete, matchToDeleteResolved)).willReturn(true);
 
         given(ioService.isSameFile(same, sameResolved)).willReturn(true);
 
@@ -75,7 +85,7 @@ class ActionsTest {
 
         // then
         verify(ioService, times(1)).move(matchToMove, matchToMoveResolved);
-        verify(ioService, times(1)).delete(matchToDelete);
+        verify(ioService, times(1)).delete(matchToDelete, matchToDeleteResolved);
         verifyNoMoreInteractions(ioService);
     }
 
@@ -122,42 +132,121 @@ class ActionsTest {
 //    }
 
     @Test
-    void shouldRemoveDuplicates() throws IOException {
+    void shouldNotResolveFilesInCanonicalLocation() throws IOException {
         // given
-        Path root = this.root.resolve("root");
-        Path single = io.write(root.resolve("dir").resolve("not"), "test");
-        Path tooSmall1 = io.write(root.resolve("dir").resolve("small1"), "test");
-        Path tooSmall2 = io.write(root.resolve("dir").resolve("small2"), "test");
-        Path duplicate1 = io.write(root.resolve("dir").resolve("duplicate1"), "test");
-        Path duplicate2 = io.write(root.resolve("dir").resolve("duplicate2"), "test");
-        Path notDuplicated = io.write(root.resolve("dir").resolve("not-duplicated"), "test");
-        Path inOtherDirectory = io.write(root.resolve("dir-other").resolve("other"), "test");
+        Path vault = root.resolve("vault");
+        Path canonical = io.write(vault.resolve("2020-01").resolve("20200115-name.jpg"), "test");
+        Path other = io.write(vault.resolve("2020-01").resolve("other.jpg"), "test");
 
-        given(ioService.size(single)).willReturn(1026L);
-        given(ioService.size(inOtherDirectory)).willReturn(1025L);
+        given(ioService.isCanonical(canonical)).willReturn(true);
+        given(ioService.isCanonical(other)).willReturn(false);
+        given(ioService.buildMatchingTarget(FileRecord.of(other), vault)).willReturn(null);
 
-        given(ioService.size(tooSmall1)).willReturn(1024L);
-        given(ioService.size(tooSmall2)).willReturn(1024L);
+        // when
+        underTest.organize("reorganize", vault, vault);
 
-        given(ioService.size(duplicate1)).willReturn(1025L);
-        given(ioService.size(duplicate2)).willReturn(1025L);
-        given(ioService.size(notDuplicated)).willReturn(1025L);
+        // then
+        verify(ioService, never()).buildMatchingTarget(FileRecord.of(canonical), vault);
+        verify(ioService, times(1)).buildMatchingTarget(FileRecord.of(other), vault);
+    }
 
-        given(ioService.isSameFile(duplicate1, notDuplicated)).willReturn(false);
-        given(ioService.isSameFile(duplicate2, notDuplicated)).willReturn(false);
+    @Test
+    void shouldNotSkipIndexedDirectoryAfterDryRun() throws IOException {
+        // given
+        Path vault = root.resolve("vault");
+        Path file = io.write(vault.resolve("other").resolve("name.jpg"), "test");
+        Path resolved = vault.resolve("2020-01").resolve("20200115-name.jpg");
+        directoryIndex.load(root.resolve("index.json"));
 
-        given(ioService.haveSameContent(duplicate1, notDuplicated)).willReturn(false);
-        given(ioService.haveSameContent(duplicate2, notDuplicated)).willReturn(false);
+        given(ioService.isMove()).willReturn(false, true);
+        given(ioService.buildMatchingTarget(FileRecord.of(file), vault)).willReturn(resolved);
 
-        given(ioService.isSameFile(duplicate1, duplicate2)).willReturn(false);
+        // when
+        underTest.organize("reorganize", vault, vault);
+        underTest.organize("reorganize", vault, vault);
 
-        given(ioService.haveSameContent(duplicate1, duplicate2)).willReturn(true);
+        // then
+        verify(ioService, times(2)).move(file, resolved);
+    }
+
+    @Test
+    void shouldIndexOnlyDirectoriesWithAllFilesInPlace() throws IOException {
+        // given
+        Path vault = root.resolve("vault");
+        Path canonical = io.write(vault.resolve("2020-01").resolve("20200115-name.jpg"), "test");
+        Path noDate = io.write(vault.resolve("other").resolve("name.jpg"), "test");
+        directoryIndex.load(root.resolve("index.json"));
+
+        given(ioService.isCanonical(canonical)).willReturn(true);
+        given(ioService.buildMatchingTarget(FileRecord.of(noDate), vault)).willReturn(null);
+
+        // when
+        underTest.organize("reorganize", vault, vault);
+        underTest.organize("reorganize", vault, vault);
+
+        // then
+        verify(ioService, times(1)).isCanonical(canonical);
+        verify(ioService, times(2)).buildMatchingTarget(FileRecord.of(noDate), vault);
+    }
+
+    @Test
+    void shouldNotReplayDuplicatesOfDryRun() throws IOException {
+        // given
+        Path root = this.root.resolve("root");
+        Path duplicate1 = io.write(root.resolve("dir").resolve("duplicate1"), new byte[1025]);
+        Path duplicate2 = io.write(root.resolve("dir").resolve("duplicate2"), new byte[1025]);
+        directoryIndex.load(this.root.resolve("index.json"));
+
+        given(ioService.isDelete()).willReturn(false, true);
+        given(ioService.haveSameContent(argThat(paths -> paths.size() == 2 && paths.containsAll(List.of(duplicate1, duplicate2))))).willReturn(List.of(List.of(duplicate1, duplicate2)));
+        given(ioService.retainOne(List.of(duplicate1, duplicate2))).willReturn(duplicate1);
+
+        // when
+        underTest.removeDuplicatesPerDirectory("id", root);
+        underTest.removeDuplicatesPerDirectory("id", root);
+
+        // then
+        verify(ioService, times(2)).retainOne(List.of(duplicate1, duplicate2));
+    }
+
+    @Test
+    void shouldRemoveDuplicates() throws IOException {
+        // given
+        Path root = this.root.resolve("root");
+        Path single = io.write(root.resolve("dir").resolve("not"), new byte[1026]);
+        Path tooSmall1 = io.write(root.resolve("dir").resolve("small1"), new byte[1024]);
+        Path tooSmall2 = io.write(root.resolve("dir").resolve("small2"), new byte[1024]);
+        Path duplicate1 = io.write(root.resolve("dir").resolve("duplicate1"), new byte[1025]);
+        Path duplicate2 = io.write(root.resolve("dir").resolve("duplicate2"), new byte[1025]);
+        Path notDuplicated = io.write(root.resolve("dir").resolve("not-duplicated"), new byte[1025]);
+        Path inOtherDirectory = io.write(root.resolve("dir-other").resolve("other"), new byte[1025]);
+
+        given(ioService.haveSameContent(argThat(paths -> paths.size() == 3 && paths.containsAll(List.of(duplicate1, duplicate2, notDuplicated)))))
+                .willReturn(List.of(List.of(duplicate1, duplicate2)));
+        given(ioService.retainOne(List.of(duplicate1, duplicate2))).willReturn(duplicate1);
 
         // when
         underTest.removeDuplicatesPerDirectory("id", root);
 
         // then
-        verify(ioService, times(1)).deleteOne(duplicate1, duplicate2);
+        verify(ioService, times(1)).retainOne(List.of(duplicate1, duplicate2));
         verifyNoMoreInteractions(ioService);
     }
+
+    @Test
+    void shouldLogRetainedFileAsOriginal() throws IOException {
+        // given
+        Path root = this.root.resolve("root");
+        Path duplicate1 = io.write(root.resolve("dir").resolve("duplicate1"), new byte[1025]);
+        Path duplicate2 = io.write(root.resolve("dir").resolve("duplicate2"), new byte[1025]);
+
+        given(ioService.haveSameContent(argThat(paths -> paths.size() == 2))).willReturn(List.of(List.of(duplicate1, duplicate2)));
+        given(ioService.retainOne(List.of(duplicate1, duplicate2))).willReturn(duplicate2);
+
+        // when
+        underTest.removeDuplicatesPerDirectory("id", root);
+
+        // then
+        verify(logger).infoStat("duplicate", duplicate2, "=", duplicate1);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,56 @@
+package com.nilcaream.cptidy;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BufferPoolTest {
+
+    private BufferPool underTest = new BufferPool();
+
+    @Test
+    void shouldReuseReleasedBuffer() {
+        // given
+        ByteBuffer buffer = underTest.acquire(1024);
+        buffer.put((byte) 1);
+        underTest.release(buffer);
+
+        // when
+        ByteBuffer actual = underTest.acquire(1024);
+
+        // then
+        assertThat(actual).isSameAs(buffer);
+        assertThat(actual.isDirect()).isTrue();
+        assertThat(actual.position()).isZero();
+        assertThat(actual.remaining()).isEqualTo(1024);
+        assertThat(underTest.getAllocations()).isEqualTo(1);
+        assertThat(underTest.getReuses()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldAllocateBufferOfRequestedSize() {
+        // given
+        underTest.release(underTest.acquire(1024));
+
+        // when
+        ByteBuffer actual = underTest.acquire(2048);
+
+        // then
+        assertThat(actual.capacity()).isEqualTo(2048);
+        assertThat(underTest.getAllocations()).isEqualTo(2);
+        assertThat(underTest.getAllocatedBytes()).isEqualTo(3072);
+    }
+
+    @Test
+    void shouldNotHandOutBufferTwice() {
+        // when
+        ByteBuffer buffer1 = underTest.acquire(1024);
+        ByteBuffer buffer2 = underTest.acquire(1024);
+
+        // then
+        assertThat(buffer1).isNotSameAs(buffer2);
+        assertThat(underTest.getAllocations()).isEqualTo(2);
+    }
+}
@@ -0,0 +1,108 @@
+package com.nilcaream.cptidy;
+
+import com.google.common.jimfs.Configuration;
+import com.google.common.jimfs.Jimfs;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ExtendWith(MockitoExtension.class)
+class BufferTunerTest {
+
+    private static final long MB = 1024 * 1024;
+
+    @InjectMocks
+    private BufferTuner underTest = new BufferTuner();
+
+    @Spy
+    private Logger logger = new Logger();
+
+    private Io io = new Io();
+
+    @Test
+    void shouldUseDefaultSizeIfDisabled() throws IOException {
+        // given
+        Path path = io.write(newRoot().resolve("file"), "test");
+
+        // when
+        underTest.record(path, 64 * 1024, 1024 * MB, 1);
+
+        // then
+        assertThat(underTest.bufferSize(path, 12345)).isEqualTo(12345);
+        assertThat(underTest.getBufferSizes()).isEmpty();
+    }
+
+    @Test
+    void shouldTryAllCandidatesAndPickFastest() throws IOException {
+        // given
+        Path path = io.write(newRoot().resolve("file"), "test");
+        underTest.setEnabled(true);
+        Set<Integer> tried = new HashSet<>();
+
+        // when
+        for (int i = 0; i < 5; i++) {
+            int size = underTest.bufferSize(path, 12345);
+            tried.add(size);
+            long nanos = size == 1024 * 1024 ? 100_000_000 : 500_000_000; // 1MB buffer is 5 times faster
+            underTest.record(path, size, 64 * MB, nanos);
+        }
+
+        // then
+        assertThat(tried).containsExactlyInAnyOrder(64 * 1024, 256 * 1024, 1024 * 1024, 4 * 1024 * 1024, 16 * 1024 * 1024);
+        assertThat(underTest.bufferSize(path, 12345)).isEqualTo(1024 * 1024);
+        assertThat(underTest.getBufferSizes()).containsValue(1024 * 1024);
+    }
+
+    @Test
+    void shouldCalibrateEachFileStoreSeparately() throws IOException {
+        // given
+        Path path1 = io.write(newRoot().resolve("file"), "test");
+        Path path2 = io.write(newRoot().resolve("file"), "test");
+        underTest.setEnabled(true);
+
+        // when
+        for (int i = 0; i < 5; i++) {
+            int size = underTest.bufferSize(path1, 12345);
+            underTest.record(path1, size, 64 * MB, size == 64 * 1024 ? 1 : 1000);
+        }
+
+        // then
+        assertThat(underTest.bufferSize(path1, 12345)).isEqualTo(64 * 1024);
+        assertThat(underTest.bufferSize(path2, 12345)).isNotEqualTo(12345);
+        assertThat(underTest.getBufferSizes()).hasSize(2).containsValues(64 * 1024, 0);
+    }
+
+    @Test
+    void shouldCalibrateWithCandidatesNotLargerThanFiles() throws IOException {
+        // given
+        Path path = io.write(newRoot().resolve("file"), "test");
+        underTest.setEnabled(true);
+        Set<Integer> tried = new HashSet<>();
+
+        // when
+        for (int i = 0; i < 100 && underTest.getBufferSizes().values().stream().noneMatch(size -> size > 0); i++) {
+            int size = underTest.bufferSize(path, 12345, 2 * MB);
+            tried.add(size);
+            underTest.record(path, size, 32 * MB, size == 256 * 1024 ? 1 : 1000);
+        }
+
+        // then
+        assertThat(tried).containsExactlyInAnyOrder(64 * 1024, 256 * 1024, 1024 * 1024);
+        assertThat(underTest.bufferSize(path, 12345, 2 * MB)).isEqualTo(256 * 1024);
+    }
+
+    private Path newRoot() {
+        FileSystem fileSystem = Jimfs.newFileSystem(Configuration.unix());
+        return fileSystem.getPath("unix").toAbsolutePath();
+    }
+}
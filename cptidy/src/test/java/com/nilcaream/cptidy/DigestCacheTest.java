@@ -0,0 +1,124 @@
+package com.nilcaream.cptidy;
+
+import com.google.common.jimfs.Configuration;
+import com.google.common.jimfs.Jimfs;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class DigestCacheTest {
+
+    @InjectMocks
+    private DigestCache underTest = new DigestCache();
+
+    @Mock
+    private HashEngine hashEngine;
+
+    private Io io = new Io();
+
+    private Path root = Jimfs.newFileSystem(Configuration.unix()).getPath("unix").toAbsolutePath();
+
+    @Test
+    void shouldReadFileOnce() throws IOException {
+        // given
+        Path path = io.write(root.resolve("file"), "test");
+        given(hashEngine.hash(path, HashAlgorithm.SHA_256)).willReturn("x");
+        underTest.setCapacity(10);
+
+        // when
+        for (int i = 0; i < 3; i++) {
+            assertThat(underTest.digest(path, HashAlgorithm.SHA_256)).isEqualTo("x");
+        }
+
+        // then
+        verify(hashEngine, times(1)).hash(path, HashAlgorithm.SHA_256);
+        assertThat(underTest.getHits()).isEqualTo(2);
+        assertThat(underTest.getMisses()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldReadModifiedFileAgain() throws IOException {
+        // given
+        Path path = io.write(root.resolve("file"), "test");
+        given(hashEngine.hash(path, HashAlgorithm.SHA_256)).willReturn("x", "y");
+        underTest.setCapacity(10);
+
+        // when
+        String before = underTest.digest(path, HashAlgorithm.SHA_256);
+        Files.setLastModifiedTime(path, FileTime.from(Instant.parse("2010-01-01T12:00:00.00Z")));
+        String after = underTest.digest(path, HashAlgorithm.SHA_256);
+
+        // then
+        assertThat(before).isEqualTo("x");
+        assertThat(after).isEqualTo("y");
+    }
+
+    @Test
+    void shouldEvictLeastRecentlyUsed() throws IOException {
+        // given
+        Path path1 = io.write(root.resolve("file-1"), "test1");
+        Path path2 = io.write(root.resolve("file-2"), "test2");
+        Path path3 = io.write(root.resolve("file-3"), "test3");
+        given(hashEngine.hash(any(), eq(HashAlgorithm.SHA_256))).willReturn("x");
+        underTest.setCapacity(2);
+
+        // when
+        underTest.digest(path1, HashAlgorithm.SHA_256);
+        underTest.digest(path2, HashAlgorithm.SHA_256);
+        underTest.digest(path1, HashAlgorithm.SHA_256);
+        underTest.digest(path3, HashAlgorithm.SHA_256);
+        underTest.digest(path1, HashAlgorithm.SHA_256);
+        underTest.digest(path2, HashAlgorithm.SHA_256);
+
+        // then
+        verify(hashEngine, times(1)).hash(path1, HashAlgorithm.SHA_256);
+        verify(hashEngine, times(2)).hash(path2, HashAlgorithm.SHA_256);
+        verify(hashEngine, times(1)).hash(path3, HashAlgorithm.SHA_256);
+    }
+
+    @Test
+    void shouldNotCacheByDefault() throws IOException {
+        // given
+        Path path = io.write(root.resolve("file"), "test");
+
+        // when
+        underTest.digest(path, HashAlgorithm.SHA_256);
+        underTest.digest(path, HashAlgorithm.SHA_256);
+
+        // then
+        verify(hashEngine, times(2)).hash(path, HashAlgorithm.SHA_256);
+        assertThat(underTest.isEnabled()).isFalse();
+    }
+
+    @Test
+    void shouldNotCacheIfDisabled() throws IOException {
+        // given
+        Path path = io.write(root.resolve("file"), "test");
+        underTest.setCapacity(2);
+        underTest.setCapacity(0);
+
+        // when
+        underTest.digest(path, HashAlgorithm.SHA_256);
+        underTest.digest(path, HashAlgorithm.SHA_256);
+
+        // then
+        verify(hashEngine, times(2)).hash(path, HashAlgorithm.SHA_256);
+        assertThat(underTest.isEnabled()).isFalse();
+    }
+}
@@ -0,0 +1,120 @@
+package com.nilcaream.cptidy;
+
+import com.google.common.jimfs.Configuration;
+import com.google.common.jimfs.Jimfs;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ExtendWith(MockitoExtension.class)
+class DirectoryIndexTest {
+
+    @InjectMocks
+    private DirectoryIndex underTest = new DirectoryIndex();
+
+    @Spy
+    private Logger logger = new Logger();
+
+    @Spy
+    private ScanFilter scanFilter = new ScanFilter();
+
+    private Io io = new Io();
+
+    private Path root = Jimfs.newFileSystem(Configuration.unix()).getPath("unix").toAbsolutePath();
+
+    private List<List<String>> results = List.of(List.of("all match", "file", ":", "2015-06/file"));
+
+    @Test
+    void shouldReturnResultsOfUnchangedDirectory() throws IOException {
+        // given
+        Path directory = root.resolve("2015-06");
+        io.write(directory.resolve("file"), "test");
+        underTest.load(root.resolve("index.json"));
+        underTest.put("analyze", directory, underTest.summarize(directory), results);
+
+        // when
+        List<List<String>> actual = underTest.getResults("analyze", directory, underTest.summarize(directory));
+
+        // then
+        assertThat(actual).isEqualTo(results);
+        assertThat(underTest.getResults("reorganize", directory, underTest.summarize(directory))).isNull();
+    }
+
+    @Test
+    void shouldDetectModifiedFile() throws IOException {
+        // given
+        Path directory = root.resolve("2015-06");
+        Path file = io.write(directory.resolve("file"), "test");
+        FileTime modified = Files.getLastModifiedTime(directory);
+        underTest.load(root.resolve("index.json"));
+        underTest.put("analyze", directory, underTest.summarize(directory), results);
+
+        // when
+        Files.writeString(file, "test-2");
+        Files.setLastModifiedTime(directory, modified);
+        List<List<String>> actual = underTest.getResults("analyze", directory, underTest.summarize(directory));
+
+        // then
+        assertThat(actual).isNull();
+    }
+
+    @Test
+    void shouldDetectAddedFile() throws IOException {
+        // given
+        Path directory = root.resolve("2015-06");
+        io.write(directory.resolve("file"), "test");
+        underTest.load(root.resolve("index.json"));
+        underTest.put("analyze", directory, underTest.summarize(directory), results);
+
+        // when
+        io.write(directory.resolve("file-2"), "test");
+        List<List<String>> actual = underTest.getResults("analyze", directory, underTest.summarize(directory));
+
+        // then
+        assertThat(actual).isNull();
+    }
+
+    @Test
+    void shouldPersistIndex() throws IOException {
+        // given
+        Path directory = root.resolve("2015-06");
+        io.write(directory.resolve("file"), "test");
+        Path index = root.resolve("index.json");
+        underTest.load(index);
+        underTest.put("analyze", directory, underTest.summarize(directory), results);
+        underTest.save();
+
+        // when
+        DirectoryIndex loaded = new DirectoryIndex();
+        loaded.load(index);
+        List<List<String>> actual = loaded.getResults("analyze", directory, loaded.summarize(directory));
+
+        // then
+        assertThat(actual).isEqualTo(results);
+    }
+
+    @Test
+    void shouldNotReturnResultsIfDisabled() throws IOException {
+        // given
+        Path directory = root.resolve("2015-06");
+        io.write(directory.resolve("file"), "test");
+        underTest.put("analyze", directory, underTest.summarize(directory), results);
+
+        // when
+        List<List<String>> actual = underTest.getResults("analyze", directory, underTest.summarize(directory));
+
+        // then
+        assertThat(underTest.isEnabled()).isFalse();
+        assertThat(actual).isNull();
+    }
+}
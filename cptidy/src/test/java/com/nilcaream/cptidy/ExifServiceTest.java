@@ -6,8 +6,12 @@ import org.mockito.InjectMocks;
 import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -44,6 +48,65 @@ class ExifServiceTest {
         assertThat(actual).isNull();
     }
 
+    @Test
+    void shouldExtractDateFromHeader() throws IOException {
+        // given
+        Path source = Paths.get("src", "test", "resources", "exif-original.jpg");
+        byte[] header = Arrays.copyOf(Files.readAllBytes(source), 64 * 1024);
+
+        // when
+        DateString actual = underTest.getDate(source, header, Files.size(source));
+
+        // then
+        assertThat(actual.asLong()).isEqualTo("20080530");
+    }
+
+    @Test
+    void shouldReadFileIfHeaderHasNoDate() throws IOException {
+        // given
+        Path source = Paths.get("src", "test", "resources", "exif-original.jpg");
+        byte[] header = Arrays.copyOf(Files.readAllBytes(source), 64);
+
+        // when
+        DateString actual = underTest.getDate(source, header, Files.size(source));
+
+        // then
+        assertThat(actual.asLong()).isEqualTo("20080530");
+    }
+
+    @Test
+    void shouldKeepDateFromHeader() throws IOException {
+        // given
+        Path source = Paths.get("src", "test", "resources", "exif-original.jpg");
+        Path other = Files.createTempFile("cptidy-", ".jpg");
+        Files.copy(Paths.get("src", "test", "resources", "no-exif.jpg"), other, StandardCopyOption.REPLACE_EXISTING);
+        byte[] header = Files.readAllBytes(source);
+        underTest.setFused(true);
+
+        // when
+        underTest.getDate(other, header, header.length);
+        DateString actual = underTest.getDate(other);
+
+        // then
+        assertThat(actual.asLong()).isEqualTo("20080530");
+    }
+
+    @Test
+    void shouldNotUseDateFromHeaderIfNotFused() throws IOException {
+        // given
+        Path source = Paths.get("src", "test", "resources", "exif-original.jpg");
+        Path other = Files.createTempFile("cptidy-", ".jpg");
+        Files.copy(Paths.get("src", "test", "resources", "no-exif.jpg"), other, StandardCopyOption.REPLACE_EXISTING);
+        byte[] header = Files.readAllBytes(source);
+
+        // when
+        underTest.getDate(other, header, header.length);
+        DateString actual = underTest.getDate(other);
+
+        // then
+        assertThat(actual).isNull();
+    }
+
     @Test
     void shouldExtractDateTime() {
         // given
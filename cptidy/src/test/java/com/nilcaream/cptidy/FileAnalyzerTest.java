@@ -0,0 +1,91 @@
+package com.nilcaream.cptidy;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class FileAnalyzerTest {
+
+    @InjectMocks
+    private FileAnalyzer underTest = new FileAnalyzer();
+
+    @Spy
+    private Logger logger = new Logger();
+
+    @Mock
+    private HashEngine hashEngine;
+
+    @Mock
+    private ExifService exifService;
+
+    @Mock
+    private DigestCache digestCache;
+
+    private Io io = new Io();
+
+    @Test
+    void shouldPassSingleReadToAllConsumers() throws IOException {
+        // given
+        byte[] content = new byte[3 * 4096 + 10];
+        content[4096] = 1;
+        Path path = io.write(Files.createTempFile("cptidy-", ".tmp"), content);
+        DateString date = new DateString("2010", "01", "02");
+        givenRead(path, content);
+        given(exifService.getDate(path, content, content.length)).willReturn(date);
+
+        // when
+        FileAnalyzer.Analysis actual = underTest.analyze(path, HashAlgorithm.SHA_256);
+
+        // then
+        assertThat(actual.getDigest()).isEqualTo("x");
+        assertThat(actual.getDate()).isEqualTo(date);
+        assertThat(underTest.getFiles()).isEqualTo(1);
+        assertThat(underTest.getBytes()).isEqualTo(content.length);
+        verify(digestCache).put(path, HashAlgorithm.SHA_256, "x");
+    }
+
+    @Test
+    void shouldReadFileOnce() throws IOException {
+        // given
+        byte[] content = new byte[]{1, 2, 3};
+        Path path = io.write(Files.createTempFile("cptidy-", ".tmp"), content);
+        givenRead(path, content);
+
+        // when
+        for (int i = 0; i < 3; i++) {
+            assertThat(underTest.analyze(path, HashAlgorithm.SHA_256).getDigest()).isEqualTo("x");
+        }
+
+        // then
+        verify(hashEngine, times(1)).hash(eq(path), eq(HashAlgorithm.SHA_256), any());
+        assertThat(underTest.getFiles()).isEqualTo(1);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void givenRead(Path path, byte[] content) throws IOException {
+        given(hashEngine.hash(eq(path), eq(HashAlgorithm.SHA_256), any())).willAnswer(invocation -> {
+            Consumer<ByteBuffer> listener = invocation.getArgument(2);
+            for (int offset = 0; offset < content.length; offset += 1000) {
+                listener.accept(ByteBuffer.wrap(content, offset, Math.min(1000, content.length - offset)).asReadOnlyBuffer());
+            }
+            return "x";
+        });
+    }
+}
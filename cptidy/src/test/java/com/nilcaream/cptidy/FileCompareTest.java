@@ -25,6 +25,14 @@ import static java.lang.System.nanoTime;
 import static java.nio.file.StandardOpenOption.*;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 @ExtendWith(MockitoExtension.class)
 class FileCompareTest {
@@ -35,6 +43,12 @@ class FileCompareTest {
     @Spy
     private Logger logger = new Logger();
 
+    @Spy
+    private BufferPool bufferPool = new BufferPool();
+
+    @Spy
+    private BufferTuner bufferTuner = new BufferTuner();
+
     private Path pathA;
     private Path pathB;
     private String content;
@@ -311,6 +325,162 @@ class FileCompareTest {
         assertThat(underTest.fast(pathA, pathB)).isFalse();
     }
 
+    @Test
+    void shouldReportSamplingCoverage() throws IOException {
+        // given
+        pathA = create(pathA.getParent(), 64 * 1024 * 1024, 1024 * 1024);
+        pathB = create(pathA.getParent(), 64 * 1024 * 1024, 1024 * 1024);
+
+        // when
+        boolean defaultSampling = underTest.fast(pathA, pathB);
+        double defaultCoverage = underTest.getCoverage();
+        underTest.setSamples(16);
+        underTest.setSampleSize(1024 * 1024);
+        boolean randomSampling = underTest.fast(pathA, pathB);
+
+        // then
+        assertThat(defaultSampling).isTrue();
+        assertThat(randomSampling).isTrue();
+        assertThat(defaultCoverage).isEqualTo(0.25);
+        assertThat(underTest.getSampledCompares()).isEqualTo(2);
+        assertThat(underTest.getMinCoverage()).isEqualTo(0.25);
+        assertThat(underTest.getCoverage()).isGreaterThan(0.25);
+    }
+
+    @Test
+    void shouldDetectDifferenceWithLargerSamples() throws IOException {
+        // given
+        pathA = create(pathA.getParent(), 64 * 1024 * 1024, 40 * 1024 * 1024);
+        pathB = create(pathA.getParent(), 64 * 1024 * 1024, 40 * 1024 * 1024 + 1);
+
+        // when
+        boolean defaultSampling = underTest.fast(pathA, pathB);
+        underTest.setSampleSize(16 * 1024 * 1024);
+        boolean largerSampling = underTest.fast(pathA, pathB);
+
+        // then
+        assertThat(defaultSampling).isTrue();
+        assertThat(largerSampling).isFalse();
+    }
+
+    @Test
+    void shouldReportMismatchOffset() throws IOException {
+        // given
+        pathA = create(pathA.getParent(), 1024 * 1024, 300 * 1000);
+        pathB = create(pathA.getParent(), 1024 * 1024, 300 * 1001);
+        Path pathC = create(pathA.getParent(), 1024 * 1024 + 10, 300 * 1000);
+
+        // then
+        assertThat(underTest.mismatch(pathA, pathB)).isEqualTo(300 * 1000);
+        assertThat(underTest.mismatch(pathA, pathB, 4096)).isEqualTo(300 * 1000);
+        assertThat(underTest.mismatch(pathA, pathA, 4096)).isEqualTo(-1);
+        assertThat(underTest.mismatch(pathA, pathC, 4096)).isEqualTo(1024 * 1024);
+    }
+
+    @Test
+    void shouldCompareAsynchronouslyBlockByBlock() throws IOException {
+        // given
+        pathA = create(pathA.getParent(), 1024 * 1024, 1000 * 1000);
+        pathB = create(pathA.getParent(), 1024 * 1024, 1000 * 1001);
+        Path pathC = create(pathA.getParent(), 1024 * 1024, 1000 * 1000);
+        underTest.updateBufferSize(4096);
+
+        // then
+        assertThat(underTest.byAsyncChannel(pathA, pathB)).isFalse();
+        assertThat(underTest.byAsyncChannel(pathA, pathC)).isTrue();
+        assertThat(underTest.byAsyncChannel(pathC, pathA)).isTrue();
+    }
+
+    @Test
+    void shouldPartitionFilesBySameContent() throws IOException {
+        // given
+        Path pathC = create(pathA.getParent(), 1024 * 1024, 64 * 1024);
+        Path pathD = create(pathA.getParent(), 1024 * 1024, 64 * 1024 + 1);
+        Path pathE = create(pathA.getParent(), 1024 * 1024, 64 * 1024);
+        Path pathF = create(pathA.getParent(), 1024, 64);
+        Path pathG = create(pathA.getParent(), 1024 * 1024, 1023 * 1024);
+        Path pathH = create(pathA.getParent(), 1024 * 1024, 64 * 1024 + 1);
+        Files.delete(pathB);
+
+        // when
+        List<List<Path>> actual = underTest.partition(List.of(pathC, pathD, pathE, pathF, pathG, pathH, pathB));
+
+        // then
+        assertThat(actual).containsExactlyInAnyOrder(List.of(pathC, pathE), List.of(pathD, pathH), List.of(pathF), List.of(pathG), List.of(pathB));
+    }
+
+    @Test
+    void shouldRecordThroughputOnlyForBufferSizeUsed() throws IOException {
+        // given
+        io.write(pathA, new byte[5 * 1024 * 1024]);
+        io.write(pathB, new byte[5 * 1024 * 1024]);
+        doReturn(16 * 1024 * 1024, 4 * 1024 * 1024).when(bufferTuner).bufferSize(eq(pathA), anyInt(), eq(5L * 1024 * 1024));
+
+        // when
+        boolean capped = underTest.byteByByte(pathA, pathB);
+        boolean tuned = underTest.byteByByte(pathA, pathB);
+
+        // then
+        assertThat(capped).isTrue();
+        assertThat(tuned).isTrue();
+        verify(bufferTuner, never()).record(any(), eq(16 * 1024 * 1024), anyLong(), anyLong());
+        verify(bufferTuner, never()).record(any(), eq(8 * 1024 * 1024), anyLong(), anyLong());
+        verify(bufferTuner).record(eq(pathA), eq(4 * 1024 * 1024), eq(10L * 1024 * 1024), anyLong());
+    }
+
+    @Test
+    void shouldFindFirstCandidateWithSameContent() throws IOException {
+        // given
+        byte[] content = new byte[256 * 1024];
+        Path source = write(content);
+        List<Path> candidates = new ArrayList<>();
+        content[0] = 1;
+        for (int i = 0; i < 70; i++) {
+            candidates.add(write(content));
+        }
+        content[0] = 0;
+        content[content.length - 1] = 1;
+        candidates.add(write(content));
+        content[content.length - 1] = 0;
+        Path same1 = write(content);
+        Path same2 = write(content);
+
+        // when
+        Path notFound = underTest.findSame(source, candidates);
+        candidates.add(same1);
+        candidates.add(same2);
+        Path found = underTest.findSame(source, candidates);
+
+        // then
+        assertThat(notFound).isNull();
+        assertThat(found).isEqualTo(same1);
+    }
+
+    @Test
+    void shouldPartitionGroupLargerThanOpenFilesLimit() throws IOException {
+        // given
+        byte[] content = new byte[256 * 1024];
+        List<Path> same = new ArrayList<>();
+        for (int i = 0; i < 68; i++) {
+            same.add(write(content));
+        }
+        content[content.length - 1] = 1;
+        Path differentAtEnd1 = write(content);
+        Path differentAtEnd2 = write(content);
+        content[0] = 1;
+        Path differentAtStart = write(content);
+        List<Path> paths = new ArrayList<>(same);
+        paths.add(34, differentAtEnd1);
+        paths.add(differentAtStart);
+        paths.add(differentAtEnd2);
+
+        // when
+        List<List<Path>> actual = underTest.partition(paths);
+
+        // then
+        assertThat(actual).containsExactlyInAnyOrder(same, List.of(differentAtEnd1, differentAtEnd2), List.of(differentAtStart));
+    }
+
     void assertComparison(boolean expected) throws IOException {
         Random random = new Random(currentTimeMillis());
         for (int i = 2; i <= 1024 * 1024; i *= 2) {
@@ -337,6 +507,16 @@ class FileCompareTest {
         }
         assertThat(underTest.fast(pathB, pathA)).isEqualTo(expected);
         assertThat(underTest.fast(pathA, pathB)).isEqualTo(expected);
+        assertThat(underTest.byAsyncChannel(pathB, pathA)).isEqualTo(expected);
+        assertThat(underTest.byAsyncChannel(pathA, pathB)).isEqualTo(expected);
+        assertThat(underTest.mismatch(pathA, pathB) == -1).isEqualTo(expected);
+        assertThat(underTest.mismatch(pathB, pathA, 4096) == -1).isEqualTo(expected);
+    }
+
+    private Path write(byte[] content) throws IOException {
+        Path file = Files.write(Files.createTempFile(pathA.getParent(), "cptidy-", ".tmp").toAbsolutePath(), content);
+        toDelete.add(file);
+        return file;
     }
 
     private Path create(Path root, int size, int changeEvery) throws IOException {
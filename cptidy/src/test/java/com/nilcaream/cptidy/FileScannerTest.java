@@ -0,0 +1,269 @@
+package com.nilcaream.cptidy;
+
+import com.google.common.jimfs.Configuration;
+import com.google.common.jimfs.Jimfs;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ExtendWith(MockitoExtension.class)
+class FileScannerTest {
+
+    @InjectMocks
+    private FileScanner underTest = new FileScanner();
+
+    @Spy
+    private Logger logger = new Logger();
+
+    @Spy
+    private ScanFilter scanFilter = new ScanFilter();
+
+    private Io io = new Io();
+
+    private Path root = Jimfs.newFileSystem(Configuration.unix()).getPath("unix").toAbsolutePath();
+
+    @Test
+    void shouldListEntriesInWalkOrder() throws IOException {
+        // given
+        io.write(root.resolve("a").resolve("file-1"), "test");
+        io.write(root.resolve("a").resolve("b").resolve("file-2"), "test-2");
+        Files.createDirectories(root.resolve("c"));
+        List<Path> expected;
+        try (Stream<Path> walk = Files.walk(root)) {
+            expected = walk.collect(Collectors.toList());
+        }
+
+        // when
+        List<FileRecord> actual = underTest.scan(root);
+
+        // then
+        assertThat(actual).extracting(FileRecord::getPath).isEqualTo(expected);
+    }
+
+    @Test
+    void shouldListDirectoriesLazily() throws IOException {
+        // given
+        Files.createDirectories(root.resolve("a").resolve("b"));
+
+        // when
+        List<Path> actual = new ArrayList<>();
+        try (Stream<FileRecord> walk = underTest.walk(root)) {
+            Iterator<FileRecord> iterator = walk.iterator();
+            actual.add(iterator.next().getPath());
+            io.write(root.resolve("a").resolve("b").resolve("file"), "test");
+            iterator.forEachRemaining(record -> actual.add(record.getPath()));
+        }
+
+        // then
+        assertThat(actual).containsExactly(root, root.resolve("a"), root.resolve("a").resolve("b"), root.resolve("a").resolve("b").resolve("file"));
+    }
+
+    @Test
+    void shouldCaptureAttributes() throws IOException {
+        // given
+        Path file = io.write(root.resolve("a").resolve("file"), "test");
+
+        // when
+        List<FileRecord> actual = underTest.files(root).collect(Collectors.toList());
+
+        // then
+        assertThat(actual).containsExactly(FileRecord.of(file));
+        assertThat(actual.get(0).getSize()).isEqualTo(4);
+        assertThat(actual.get(0).isRegularFile()).isTrue();
+        assertThat(actual.get(0).isLink()).isFalse();
+    }
+
+    @Test
+    void shouldIncludeLinkedFilesOnlyInWalk() throws IOException {
+        // given
+        Path file = io.write(root.resolve("a").resolve("file"), "test");
+        Path link = Files.createSymbolicLink(root.resolve("a").resolve("link"), file);
+
+        // when
+        List<FileRecord> files = underTest.files(root).collect(Collectors.toList());
+        Map<Path, List<FileRecord>> directories = underTest.filesByDirectory(root);
+
+        // then
+        assertThat(files).extracting(FileRecord::getPath).containsExactlyInAnyOrder(file, link);
+        assertThat(files).filteredOn(FileRecord::isLink).extracting(FileRecord::getSize).containsExactly(4L);
+        assertThat(directories.get(root.resolve("a"))).extracting(FileRecord::getPath).containsExactly(file);
+    }
+
+    @Test
+    void shouldGroupFilesByDirectory() throws IOException {
+        // given
+        Path file1 = io.write(root.resolve("a").resolve("file-1"), "test");
+        Path file2 = io.write(root.resolve("a").resolve("file-2"), "test");
+        Path file3 = io.write(root.resolve("a").resolve("b").resolve("file-3"), "test");
+        Files.createDirectories(root.resolve("c"));
+
+        // when
+        Map<Path, List<FileRecord>> actual = underTest.filesByDirectory(root);
+
+        // then
+        assertThat(actual.keySet()).containsExactlyInAnyOrder(root, root.resolve("a"), root.resolve("a").resolve("b"), root.resolve("c"));
+        assertThat(actual.get(root)).isEmpty();
+        assertThat(actual.get(root.resolve("a"))).extracting(FileRecord::getPath).containsExactlyInAnyOrder(file1, file2);
+        assertThat(actual.get(root.resolve("a").resolve("b"))).extracting(FileRecord::getPath).containsExactly(file3);
+        assertThat(actual.get(root.resolve("c"))).isEmpty();
+    }
+
+    @Test
+    void shouldListEntriesInWalkOrderWithOrderedWalkers() throws IOException {
+        // given
+        underTest.setWalkers(4);
+        underTest.setOrdered(true);
+        for (int i = 0; i < 10; i++) {
+            io.write(root.resolve("a" + i).resolve("b").resolve("file-" + i), "test");
+            io.write(root.resolve("a" + i).resolve("file-" + i), "test");
+        }
+        List<Path> expected;
+        try (Stream<Path> walk = Files.walk(root)) {
+            expected = walk.collect(Collectors.toList());
+        }
+
+        // when
+        List<FileRecord> actual = underTest.scan(root);
+
+        // then
+        assertThat(actual).extracting(FileRecord::getPath).isEqualTo(expected);
+    }
+
+    @Test
+    void shouldListEntriesInWalkOrderWithMoreDirectoriesThanLookahead() throws IOException {
+        // given
+        underTest.setWalkers(4);
+        underTest.setOrdered(true);
+        for (int i = 0; i < 300; i++) {
+            io.write(root.resolve("a" + i).resolve("b").resolve("file-" + i), "test");
+        }
+        List<Path> expected;
+        try (Stream<Path> walk = Files.walk(root)) {
+            expected = walk.collect(Collectors.toList());
+        }
+
+        // when
+        List<FileRecord> actual = underTest.scan(root);
+
+        // then
+        assertThat(actual).extracting(FileRecord::getPath).isEqualTo(expected);
+    }
+
+    @Test
+    void shouldListAllEntriesWithUnorderedWalkers() throws IOException {
+        // given
+        underTest.setWalkers(4);
+        for (int i = 0; i < 10; i++) {
+            io.write(root.resolve("a" + i).resolve("b").resolve("file-" + i), "test");
+            io.write(root.resolve("a" + i).resolve("file-" + i), "test");
+        }
+        List<Path> expected;
+        try (Stream<Path> walk = Files.walk(root)) {
+            expected = walk.collect(Collectors.toList());
+        }
+
+        // when
+        List<FileRecord> actual = underTest.scan(root);
+
+        // then
+        assertThat(actual).extracting(FileRecord::getPath).containsExactlyInAnyOrderElementsOf(expected);
+        assertThat(actual.get(0).getPath()).isEqualTo(root);
+        for (FileRecord record : actual.subList(1, actual.size())) {
+            assertThat(actual.indexOf(record)).isGreaterThan(actual.stream().map(FileRecord::getPath).collect(Collectors.toList()).indexOf(record.getPath().getParent()));
+        }
+    }
+
+    @Test
+    void shouldStopWalkersWhenClosed() throws IOException {
+        // given
+        underTest.setWalkers(2);
+        for (int i = 0; i < 100; i++) {
+            io.write(root.resolve("a" + i).resolve("file-" + i), "test");
+        }
+
+        // when
+        List<FileRecord> actual;
+        try (Stream<FileRecord> files = underTest.files(root)) {
+            actual = files.limit(3).collect(Collectors.toList());
+        }
+
+        // then
+        assertThat(actual).hasSize(3);
+    }
+
+    @Test
+    void shouldStreamFilesByDirectoryInScanOrder() throws IOException {
+        // given
+        io.write(root.resolve("a").resolve("file-1"), "test");
+        io.write(root.resolve("a").resolve("b").resolve("file-2"), "test");
+        io.write(root.resolve("a").resolve("file-3"), "test");
+        Files.createDirectories(root.resolve("c"));
+        Map<Path, List<FileRecord>> expected = underTest.filesByDirectory(root);
+
+        // when
+        List<Map.Entry<Path, List<FileRecord>>> actual;
+        try (Stream<Map.Entry<Path, List<FileRecord>>> stream = underTest.streamFilesByDirectory(root)) {
+            actual = stream.collect(Collectors.toList());
+        }
+
+        // then
+        assertThat(actual).extracting(Map.Entry::getKey).containsExactlyElementsOf(expected.keySet());
+        for (Map.Entry<Path, List<FileRecord>> entry : actual) {
+            assertThat(entry.getValue()).containsExactlyInAnyOrderElementsOf(expected.get(entry.getKey()));
+        }
+    }
+
+    @Test
+    void shouldUseListedFilesInsteadOfWalk() throws IOException {
+        // given
+        Path listed = io.write(root.resolve("a").resolve("file-1"), "test");
+        io.write(root.resolve("a").resolve("file-2"), "test");
+        Path outside = io.write(root.resolve("b").resolve("file-3"), "test");
+        underTest.setListed(List.of(listed, root.resolve("a").resolve("missing"), outside, root.resolve("a"), root.resolve("a").resolve("..").resolve("a").resolve("file-1")));
+
+        // when
+        List<FileRecord> actual = underTest.files(root.resolve("a")).collect(Collectors.toList());
+
+        // then
+        assertThat(actual).containsExactly(FileRecord.of(listed));
+        assertThat(underTest.scan(root)).hasSize(6);
+    }
+
+    @Test
+    void shouldNotListPrunedDirectoriesAndFilteredFiles() throws IOException {
+        // given
+        Path kept = io.write(root.resolve("a").resolve("file.jpg"), "test");
+        io.write(root.resolve("a").resolve("file.txt"), "test");
+        io.write(root.resolve("a").resolve("small.jpg"), "t");
+        io.write(root.resolve("a").resolve(".git").resolve("file.jpg"), "test");
+        io.write(root.resolve("node_modules").resolve("b").resolve("file.jpg"), "test");
+        scanFilter.setPrunes(List.of(".git", "node_modules"));
+        scanFilter.setExtensions(List.of("JPG"));
+        scanFilter.setMinSize(2);
+
+        // when
+        List<FileRecord> sequential = underTest.scan(root);
+        underTest.setWalkers(4);
+        List<FileRecord> parallel = underTest.scan(root);
+
+        // then
+        assertThat(sequential).extracting(FileRecord::getPath).containsExactly(root, root.resolve("a"), kept);
+        assertThat(parallel).extracting(FileRecord::getPath).containsExactlyInAnyOrder(root, root.resolve("a"), kept);
+        assertThat(scanFilter.getPrunedDirectories()).isEqualTo(4);
+        assertThat(scanFilter.getSkippedFiles()).isEqualTo(4);
+    }
+}
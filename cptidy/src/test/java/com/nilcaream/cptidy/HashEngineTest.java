@@ -0,0 +1,140 @@
+package com.nilcaream.cptidy;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.mockito.InjectMocks;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ExtendWith(MockitoExtension.class)
+class HashEngineTest {
+
+    @InjectMocks
+    private HashEngine underTest = new HashEngine();
+
+    @Spy
+    private Logger logger = new Logger();
+
+    @Spy
+    private BufferPool bufferPool = new BufferPool();
+
+    @Spy
+    private BufferTuner bufferTuner = new BufferTuner();
+
+    private List<Path> toDelete = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() throws IOException {
+        underTest.setThreads(1);
+        for (Path path : toDelete) {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    void shouldHashHeadAndTailOnly() throws IOException {
+        // given
+        Path pathA = create(1024 * 1024, 512 * 1024);
+        Path pathB = create(1024 * 1024, 512 * 1024 + 1);
+        Path pathC = create(1024 * 1024, 1023 * 1024);
+
+        // then
+        assertThat(underTest.hashHeadTail(pathA, HashAlgorithm.SHA_256, 64 * 1024)).isEqualTo(underTest.hashHeadTail(pathB, HashAlgorithm.SHA_256, 64 * 1024));
+        assertThat(underTest.hashHeadTail(pathA, HashAlgorithm.SHA_256, 64 * 1024)).isNotEqualTo(underTest.hashHeadTail(pathC, HashAlgorithm.SHA_256, 64 * 1024));
+        assertThat(underTest.hash(pathA, HashAlgorithm.SHA_256)).isNotEqualTo(underTest.hash(pathB, HashAlgorithm.SHA_256));
+    }
+
+    @Test
+    void shouldHashSmallFileCompletely() throws IOException {
+        // given
+        Path pathA = create(1000, 100);
+        Path pathB = create(1000, 100);
+
+        // then
+        assertThat(underTest.hashHeadTail(pathA, HashAlgorithm.SHA_256, 64 * 1024)).isEqualTo(underTest.hash(pathB, HashAlgorithm.SHA_256));
+    }
+
+    @Test
+    void shouldPassReadBlocksToListener() throws IOException {
+        // given
+        Path pathA = create(100 * 1024 + 10, 1000);
+        underTest.setBufferSize(4096);
+        ByteArrayOutputStream blocks = new ByteArrayOutputStream();
+
+        // when
+        String actual = underTest.hash(pathA, HashAlgorithm.XXH64, block -> {
+            byte[] bytes = new byte[block.remaining()];
+            block.get(bytes);
+            blocks.write(bytes, 0, bytes.length);
+        });
+
+        // then
+        assertThat(actual).isEqualTo(underTest.hash(pathA, HashAlgorithm.XXH64));
+        assertThat(blocks.toByteArray()).isEqualTo(Files.readAllBytes(pathA));
+    }
+
+    @Test
+    void shouldHashInParallel() throws IOException {
+        // given
+        List<Path> paths = new ArrayList<>();
+        Map<Path, String> expected = new HashMap<>();
+        for (int i = 0; i < 16; i++) {
+            Path path = create(256 * 1024, 1024 + i % 4);
+            paths.add(path);
+            expected.put(path, underTest.hash(path, HashAlgorithm.XXH64));
+        }
+        Path missing = create(1024, 10);
+        Files.delete(missing);
+        paths.add(missing);
+        underTest.setBufferSize(4096);
+        underTest.setThreads(4);
+        Map<Path, String> completed = new HashMap<>();
+
+        // when
+        Map<Path, String> actual = underTest.hash(paths.stream(), HashAlgorithm.XXH64, completed::put);
+
+        // then
+        assertThat(actual).isEqualTo(expected);
+        assertThat(completed).isEqualTo(expected);
+        assertThat(logger.getErrors()).hasSize(1);
+    }
+
+    @ParameterizedTest
+    @EnumSource(HashAlgorithm.class)
+    void shouldHashWithAnyAlgorithm(HashAlgorithm algorithm) throws IOException {
+        // given
+        Path pathA = create(300 * 1024, 1000);
+        Path pathB = create(300 * 1024, 1000);
+        Path pathC = create(300 * 1024, 1001);
+
+        // then
+        assertThat(underTest.hash(pathA, algorithm)).isEqualTo(underTest.hash(pathB, algorithm));
+        assertThat(underTest.hash(pathA, algorithm)).isNotEqualTo(underTest.hash(pathC, algorithm));
+    }
+
+    private Path create(int size, int changeEvery) throws IOException {
+        Path file = Files.createTempFile("cptidy-", ".tmp");
+        toDelete.add(file);
+        byte[] bytes = new byte[size];
+        byte b = 0;
+        for (int i = 0; i < size; i++, b++) {
+            bytes[i] = i % changeEvery == 0 ? (byte) (b + 1) : b;
+        }
+        Files.write(file, bytes);
+        return file;
+    }
+}
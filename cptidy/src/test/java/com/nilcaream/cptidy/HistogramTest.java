@@ -0,0 +1,52 @@
+package com.nilcaream.cptidy;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HistogramTest {
+
+    private Histogram underTest = new Histogram("month", "failure", "all match");
+
+    @Test
+    void shouldCountByRowAndColumn() {
+        // when
+        underTest.add("2015-06", "all match");
+        underTest.add("2015-06", "all match");
+        underTest.add("2015-05", "exif date");
+
+        // then
+        assertThat(underTest.get("2015-06", "all match")).isEqualTo(2);
+        assertThat(underTest.get("2015-05", "all match")).isZero();
+        assertThat(underTest.get("2015-07", "failure")).isZero();
+    }
+
+    @Test
+    void shouldFormatUsedColumnsOnly() {
+        // given
+        underTest.add("2015-06", "all match");
+        underTest.add("2015-05", "exif date");
+        underTest.add("2015-05", "all match");
+
+        // when
+        List<String> actual = underTest.format();
+
+        // then
+        assertThat(actual).containsExactly(
+                "month   | all match | exif date",
+                "2015-05 |         1 |         1",
+                "2015-06 |         1 |         0");
+    }
+
+    @Test
+    void shouldFormatHeaderOnlyIfEmpty() {
+        // when
+        List<String> actual = underTest.format();
+
+        // then
+        assertThat(underTest.hasData()).isFalse();
+        assertThat(actual).containsExactly("month");
+    }
+}
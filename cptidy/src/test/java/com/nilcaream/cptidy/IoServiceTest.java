@@ -17,13 +17,19 @@ import java.nio.file.attribute.BasicFileAttributeView;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileTime;
 import java.time.Instant;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 
 @ExtendWith(MockitoExtension.class)
 class IoServiceTest {
@@ -40,9 +46,24 @@ class IoServiceTest {
     @Mock
     private FileCompare fileCompare;
 
+    @Mock
+    private HashEngine hashEngine;
+
+    @Mock
+    private DigestCache digestCache;
+
+    @Spy
+    private ZeroScanner zeroScanner = new ZeroScanner();
+
+    @Mock
+    private FileAnalyzer fileAnalyzer;
+
     @Spy
     private Io io = new Io();
 
+    @Spy
+    private ScanFilter scanFilter = new ScanFilter();
+
     private Path root = Jimfs.newFileSystem(Configuration.unix()).getPath("unix").toAbsolutePath();
 
     @BeforeAll
@@ -90,6 +111,37 @@ class IoServiceTest {
         assertThat(underTest.haveSameContent(target, source)).isFalse();
     }
 
+    @Test
+    void shouldHaveSameContentMapped() throws IOException {
+        // given
+        Path source = io.write(root.resolve("file1.txt"), "test");
+        Path target = io.write(root.resolve("file2.txt"), "test");
+        given(fileCompare.mismatch(source, target)).willReturn(-1L);
+        given(fileCompare.mismatch(target, source)).willReturn(2L);
+
+        // when
+        underTest.setCompare("mmap");
+
+        // then
+        assertThat(underTest.haveSameContent(source, target)).isTrue();
+        assertThat(underTest.haveSameContent(target, source)).isFalse();
+    }
+
+    @Test
+    void shouldHaveSameContentAsync() throws IOException {
+        // given
+        Path source = io.write(root.resolve("file1.txt"), "test");
+        Path target = io.write(root.resolve("file2.txt"), "test");
+        given(fileCompare.byAsyncChannel(source, target)).willReturn(true);
+
+        // when
+        underTest.setCompare("async");
+
+        // then
+        assertThat(underTest.haveSameContent(source, target)).isTrue();
+        assertThat(underTest.haveSameContent(target, source)).isFalse();
+    }
+
     @Test
     void shouldDelete() throws IOException {
         // given
@@ -103,6 +155,41 @@ class IoServiceTest {
         assertThat(source).doesNotExist();
     }
 
+    @Test
+    void shouldDeleteVerifiedDuplicate() throws IOException {
+        // given
+        underTest.setDelete(true);
+        underTest.setVerify(true);
+        Path source = io.write(root.resolve("file1.txt"), "test");
+        Path original = io.write(root.resolve("file2.txt"), "test");
+        given(fileCompare.byteByByte(source, original)).willReturn(true);
+
+        // when
+        underTest.delete(source, original);
+
+        // then
+        assertThat(source).doesNotExist();
+        assertThat(original).exists();
+    }
+
+    @Test
+    void shouldNotDeleteNotVerifiedDuplicate() throws IOException {
+        // given
+        underTest.setDelete(true);
+        underTest.setVerify(true);
+        Path source = io.write(root.resolve("file1.txt"), "test");
+        Path original = io.write(root.resolve("file2.txt"), "tesT");
+        given(fileCompare.byteByByte(source, original)).willReturn(false);
+
+        // when
+        underTest.delete(source, original);
+
+        // then
+        assertThat(source).exists();
+        assertThat(original).exists();
+        assertThat(logger.getWarns()).hasSize(1);
+    }
+
     @Test
     void shouldNotDelete() throws IOException {
         // given
@@ -256,6 +343,27 @@ class IoServiceTest {
         assertThat(root.resolve("updated.txt")).exists();
     }
 
+    @Test
+    void shouldRecordVacatedDirectories() throws IOException {
+        // given
+        underTest.setMove(true);
+        underTest.setDelete(true);
+        Path moved = io.write(root.resolve("a").resolve("b").resolve("file.txt"), "test");
+        Path deleted = io.write(root.resolve("c").resolve("file.txt"), "test");
+        Path renamed = io.write(root.resolve("d").resolve("file.txt"), "test");
+        given(nameResolver.buildUniquePath(any())).willAnswer(invocation -> invocation.getArgument(0));
+
+        // when
+        underTest.move(moved, root.resolve("target").resolve("file.txt"));
+        underTest.move(renamed, root.resolve("d").resolve("other.txt"));
+        underTest.delete(deleted);
+
+        // then
+        assertThat(underTest.takeVacated(root.resolve("a"))).containsExactly(root.resolve("a").resolve("b"));
+        assertThat(underTest.takeVacated(root)).containsExactly(root.resolve("c"));
+        assertThat(underTest.takeVacated(root)).isEmpty();
+    }
+
     @Test
     void shouldNotMove() throws IOException {
         // given
@@ -421,6 +529,62 @@ class IoServiceTest {
         assertThat(root).exists();
     }
 
+    @Test
+    void shouldDeleteEmptyTreeInSinglePass() throws IOException {
+        // given
+        Files.createDirectories(root.resolve("test").resolve("second").resolve("other"));
+        io.write(root.resolve("test").resolve("empty.jpg"), "");
+        io.write(root.resolve("kept").resolve(".picasa.ini"), "not empty but ignored");
+        io.write(root.resolve("kept").resolve("test-file.jpg"), "testX");
+        io.write(root.resolve("ignored").resolve(".picasa.ini"), "not empty but ignored");
+        underTest.setDelete(true);
+        underTest.setIgnoredFiles(Set.of(".picasa.ini"));
+
+        // when
+        underTest.deleteEmptyTree(root, path -> {
+        });
+
+        // then
+        assertThat(root.resolve("test")).doesNotExist();
+        assertThat(root.resolve("ignored")).doesNotExist();
+        assertThat(root.resolve("kept").resolve(".picasa.ini")).exists();
+        assertThat(root.resolve("kept").resolve("test-file.jpg")).exists();
+        assertThat(root).exists();
+    }
+
+    @Test
+    void shouldNotDeletePrunedDirectories() throws IOException {
+        // given
+        Files.createDirectories(root.resolve("test").resolve("second").resolve("other"));
+        Files.createDirectories(root.resolve("project").resolve(".git").resolve("empty"));
+        scanFilter.setPrunes(List.of(".git"));
+        underTest.setDelete(true);
+
+        // when
+        underTest.deleteEmptyTree(root, path -> {
+        });
+
+        // then
+        assertThat(root.resolve("test")).doesNotExist();
+        assertThat(root.resolve("project").resolve(".git").resolve("empty")).exists();
+    }
+
+    @Test
+    void shouldNotDeleteEmptyTreeWithoutDeleteOption() throws IOException {
+        // given
+        Files.createDirectories(root.resolve("test").resolve("second").resolve("other"));
+        io.write(root.resolve("test").resolve("empty.jpg"), "");
+        underTest.setDelete(false);
+
+        // when
+        underTest.deleteEmptyTree(root, path -> {
+        });
+
+        // then
+        assertThat(root.resolve("test").resolve("second").resolve("other")).exists();
+        assertThat(root.resolve("test").resolve("empty.jpg")).exists();
+    }
+
     @Test
     void shouldNotDeleteRoot() throws IOException {
         // given
@@ -558,18 +722,169 @@ class IoServiceTest {
         Path path2 = io.write(root.resolve("tes").resolve("test-file-jp"), "testX");
         Path path3 = io.write(root.resolve("test").resolve("test-file-j"), "AAAAA");
         Path path4 = io.write(root.resolve("test").resolve("test-file-zzz"), "testX");
+        given(fileCompare.partition(List.of(path1, path2, path3, path4))).willReturn(List.of(List.of(path1, path2, path4), List.of(path3)));
+
+        // when
+        List<List<Path>> actual = underTest.haveSameContent(List.of(path1, path2, path3, path4));
+
+        // then
+        assertThat(actual).containsExactly(List.of(path1, path2, path4));
+    }
+
+    @Test
+    void shouldSelectFilesWithSameContentFast() throws IOException {
+        // given
+        Path path1 = io.write(root.resolve("te").resolve("test-file-jpg"), "testX");
+        Path path2 = io.write(root.resolve("tes").resolve("test-file-jp"), "testX");
+        Path path3 = io.write(root.resolve("test").resolve("test-file-j"), "AAAAA");
+        Path path4 = io.write(root.resolve("test").resolve("test-file-zzz"), "testX");
+        given(fileCompare.fast(path1, path2)).willReturn(true);
+        given(fileCompare.fast(path1, path3)).willReturn(false);
+        given(fileCompare.fast(path1, path4)).willReturn(true);
+
+        // when
+        underTest.setFast(true);
+        List<List<Path>> actual = underTest.haveSameContent(List.of(path1, path2, path3, path4));
+
+        // then
+        assertThat(actual).containsExactly(List.of(path1, path2, path4));
+    }
+
+    @Test
+    void shouldFindSameContent() throws IOException {
+        // given
+        Path source = io.write(root.resolve("source").resolve("file"), "testX");
+        Path path1 = io.write(root.resolve("target").resolve("file-1"), "testY");
+        Path path2 = io.write(root.resolve("target").resolve("file-2"), "testX");
+        given(fileCompare.findSame(source, List.of(path1, path2))).willReturn(path2);
+
+        // then
+        assertThat(underTest.findSameContent(source, List.of(path1, path2))).isEqualTo(path2);
+    }
+
+    @Test
+    void shouldFindSameContentByCachedDigest() throws IOException {
+        // given
+        Path source = io.write(root.resolve("source").resolve("file"), "testX");
+        Path path1 = io.write(root.resolve("target").resolve("file-1"), "testY");
+        Path path2 = io.write(root.resolve("target").resolve("file-2"), "testX");
+        Path path3 = io.write(root.resolve("target").resolve("file-3"), "test");
+        given(digestCache.isEnabled()).willReturn(true);
+        given(hashEngine.hash(source, HashAlgorithm.SHA_256)).willReturn("x");
+        given(digestCache.digest(path1, HashAlgorithm.SHA_256)).willReturn("y");
+        given(digestCache.digest(path2, HashAlgorithm.SHA_256)).willReturn("x");
+
+        // then
+        assertThat(underTest.findSameContent(source, List.of(path3, path1, path2))).isEqualTo(path2);
+        assertThat(underTest.findSameContent(source, List.of(path3, path1))).isNull();
+    }
+
+    @Test
+    void shouldHaveSameTargetContentByCachedDigest() throws IOException {
+        // given
+        Path source = io.write(root.resolve("source").resolve("file"), "testX");
+        Path target1 = io.write(root.resolve("target").resolve("file-1"), "testX");
+        Path target2 = io.write(root.resolve("target").resolve("file-2"), "test");
+        Path target3 = root.resolve("target").resolve("file-3");
+        given(digestCache.isEnabled()).willReturn(true);
+        given(hashEngine.hash(source, HashAlgorithm.SHA_256)).willReturn("x");
+        given(digestCache.digest(target1, HashAlgorithm.SHA_256)).willReturn("x");
+
+        // then
+        assertThat(underTest.haveSameTargetContent(source, target1)).isTrue();
+        assertThat(underTest.haveSameTargetContent(source, target2)).isFalse();
+        assertThat(underTest.haveSameTargetContent(source, target3)).isFalse();
+    }
+
+    @Test
+    void shouldHaveSameTargetContentByAnalysisDigest() throws IOException {
+        // given
+        Path source = io.write(root.resolve("source").resolve("file"), "testX");
+        Path target = io.write(root.resolve("target").resolve("file-1"), "testX");
+        FileAnalyzer.Analysis analysis = new FileAnalyzer.Analysis(HashAlgorithm.SHA_256, "x", null);
+        given(digestCache.isEnabled()).willReturn(true);
+        given(fileAnalyzer.isEnabled()).willReturn(true);
+        given(fileAnalyzer.analyze(source, HashAlgorithm.SHA_256)).willReturn(analysis);
+        given(digestCache.digest(target, HashAlgorithm.SHA_256)).willReturn("x");
+
+        // then
+        assertThat(underTest.haveSameTargetContent(source, target)).isTrue();
+        verify(hashEngine, never()).hash(source, HashAlgorithm.SHA_256);
+    }
+
+    @Test
+    void shouldGroupFilesWithSameContentInStages() throws IOException {
+        // given
+        Path path1 = io.write(root.resolve("a").resolve("file-1"), "testX");
+        Path path2 = io.write(root.resolve("b").resolve("file-2"), "testX");
+        Path path3 = io.write(root.resolve("c").resolve("file-3"), "AAAAA");
+        Path path4 = io.write(root.resolve("d").resolve("file-4"), "testX");
+        Path path5 = io.write(root.resolve("e").resolve("file-5"), "BBBBB");
+        given(hashEngine.hashHeadTail(any(), eq(HashAlgorithm.XXH64), eq(64 * 1024), any())).willReturn(Map.of(path1, "x", path2, "x", path3, "a", path4, "x", path5, "b"));
+        given(fileCompare.byteByByte(any(), any())).willAnswer(invocation -> Arrays.equals(Files.readAllBytes(invocation.getArgument(0)), Files.readAllBytes(invocation.getArgument(1))));
+
+        // when
+        List<List<Path>> actual = underTest.groupBySameContent(List.of(List.of(path1, path2, path3, path4, path5)));
+
+        // then
+        assertThat(actual).containsExactly(List.of(path1, path2, path4));
+    }
+
+    @Test
+    void shouldGroupOtherFilesIfOneGroupCannotBeRead() throws IOException {
+        // given
+        Path path1 = io.write(root.resolve("a").resolve("file-1"), "testX");
+        Path path2 = io.write(root.resolve("b").resolve("file-2"), "testX");
+        Path path3 = io.write(root.resolve("c").resolve("file-3"), "testXY");
+        Path missing = root.resolve("d").resolve("missing");
+        given(hashEngine.hashHeadTail(any(), eq(HashAlgorithm.XXH64), eq(64 * 1024), any())).willReturn(Map.of(path1, "x", path2, "x"));
         given(fileCompare.byteByByte(path1, path2)).willReturn(true);
-        given(fileCompare.byteByByte(path1, path3)).willReturn(false);
-        given(fileCompare.byteByByte(path1, path4)).willReturn(true);
-        given(fileCompare.byteByByte(path2, path3)).willReturn(false);
-        given(fileCompare.byteByByte(path2, path4)).willReturn(true);
-        given(fileCompare.byteByByte(path3, path4)).willReturn(false);
 
         // when
-        List<Path> actual = underTest.haveSameContent(List.of(path1, path2, path3, path4));
+        List<List<Path>> actual = underTest.groupBySameContent(List.of(List.of(path3, missing), List.of(path1, path2)));
+
+        // then
+        assertThat(actual).containsExactly(List.of(path1, path2));
+    }
+
+    @Test
+    void shouldNotGroupSmallFilesByQuickHashOnly() throws IOException {
+        // given
+        Path path1 = io.write(root.resolve("a").resolve("file-1"), "testX");
+        Path path2 = io.write(root.resolve("b").resolve("file-2"), "testY");
+        given(hashEngine.hashHeadTail(any(), eq(HashAlgorithm.XXH64), eq(64 * 1024), any())).willReturn(Map.of(path1, "x", path2, "x"));
+        given(fileCompare.byteByByte(any(), any())).willAnswer(invocation -> Arrays.equals(Files.readAllBytes(invocation.getArgument(0)), Files.readAllBytes(invocation.getArgument(1))));
+
+        // when
+        List<List<Path>> actual = underTest.groupBySameContent(List.of(List.of(path1, path2)));
+
+        // then
+        assertThat(actual).isEmpty();
+    }
+
+    @Test
+    void shouldGroupSmallFilesByCollisionResistantQuickHash() throws IOException {
+        // given
+        Path path1 = io.write(root.resolve("a").resolve("file-1"), "testX");
+        Path path2 = io.write(root.resolve("b").resolve("file-2"), "testX");
+        underTest.setQuickHash("sha-256");
+        given(hashEngine.hashHeadTail(any(), eq(HashAlgorithm.SHA_256), eq(64 * 1024), any())).willReturn(Map.of(path1, "x", path2, "x"));
+
+        // when
+        List<List<Path>> actual = underTest.groupBySameContent(List.of(List.of(path1, path2)));
+
+        // then
+        assertThat(actual).containsExactly(List.of(path1, path2));
+        verify(fileCompare, never()).byteByByte(any(), any());
+    }
+
+    @Test
+    void shouldRejectNotCollisionResistantFullHash() {
+        // given
+        underTest.setHash("crc32c");
 
         // then
-        assertThat(actual).containsOnly(path1, path2, path4);
+        assertThatThrownBy(() -> underTest.groupBySameContent(List.of())).hasMessageContaining("not collision resistant");
     }
 
     @Test
@@ -590,6 +905,25 @@ class IoServiceTest {
         assertThat(path4).exists();
     }
 
+    @Test
+    void shouldRetainOneVerified() throws IOException {
+        // given
+        underTest.setDelete(true);
+        underTest.setVerify(true);
+        Path path1 = io.write(root.resolve("test").resolve("test-file-1"), "test");
+        Path path2 = io.write(root.resolve("test").resolve("test-file"), "test");
+        Path path3 = io.write(root.resolve("test").resolve("test-file-2"), "tesT");
+        given(fileCompare.partition(List.of(path1, path2, path3))).willReturn(List.of(List.of(path1, path2), List.of(path3)));
+
+        // when
+        underTest.retainOne(List.of(path1, path2, path3));
+
+        // then
+        assertThat(path1).doesNotExist();
+        assertThat(path2).exists();
+        assertThat(path3).exists();
+    }
+
     @Test
     void shouldFailOnRetainSinglePath() throws IOException {
         // given
@@ -739,7 +1073,7 @@ class IoServiceTest {
     @Test
     void shouldCountZeroBlocks1() throws IOException {
         // given
-        byte[] buffer = new byte[4];
+        int blockSize = 4;
         Path pathA = Files.createTempFile("cptidy-", ".tmp");
         io.write(pathA, new byte[]{
                 0, 0, 0, 0,
@@ -749,7 +1083,7 @@ class IoServiceTest {
         });
 
         // when
-        int actual = underTest.countZeroBlocks(pathA, buffer);
+        int actual = underTest.countZeroBlocks(pathA, blockSize);
 
         // then
         assertThat(actual).isEqualTo(2);
@@ -758,7 +1092,7 @@ class IoServiceTest {
     @Test
     void shouldCountZeroBlocks2() throws IOException {
         // given
-        byte[] buffer = new byte[4];
+        int blockSize = 4;
         Path pathA = Files.createTempFile("cptidy-", ".tmp");
         io.write(pathA, new byte[]{
                 0, 0, 0, 0,
@@ -768,7 +1102,7 @@ class IoServiceTest {
         });
 
         // when
-        int actual = underTest.countZeroBlocks(pathA, buffer);
+        int actual = underTest.countZeroBlocks(pathA, blockSize);
 
         // then
         assertThat(actual).isEqualTo(1);
@@ -777,7 +1111,7 @@ class IoServiceTest {
     @Test
     void shouldCountZeroBlocks3() throws IOException {
         // given
-        byte[] buffer = new byte[4];
+        int blockSize = 4;
         Path pathA = Files.createTempFile("cptidy-", ".tmp");
         io.write(pathA, new byte[]{
                 5, 0, 0, 0,
@@ -786,10 +1120,9 @@ class IoServiceTest {
         });
 
         // when
-        int actual = underTest.countZeroBlocks(pathA, buffer);
+        int actual = underTest.countZeroBlocks(pathA, blockSize);
 
         // then
         assertThat(actual).isEqualTo(0);
     }
-
-}
\ No newline at end of file
+}
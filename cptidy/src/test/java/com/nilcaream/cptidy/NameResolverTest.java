@@ -15,7 +15,11 @@ import java.text.SimpleDateFormat;
 import java.util.Date;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.doNothing;
 
 @ExtendWith(MockitoExtension.class)
 class NameResolverTest {
@@ -57,6 +61,40 @@ class NameResolverTest {
         assertThat(underTest.resolve(matchNameNotExtension)).isNull();
     }
 
+    @Test
+    void shouldReportResolutionStatus() throws IOException {
+        // given
+        Path withDate = io.write(root.resolve("Test--20200115.jPG"), "test");
+        Path unchanged = io.write(root.resolve("20200115-test.jpg"), "test");
+        Path unknown = io.write(root.resolve("test.txt"), "test");
+
+        // then
+        assertThat(underTest.resolve(withDate).getStatus()).isEqualTo("prefix date");
+        assertThat(underTest.resolve(unchanged).getStatus()).isEqualTo("no name change");
+        assertThat(underTest.isSupported(withDate)).isTrue();
+        assertThat(underTest.isSupported(unknown)).isFalse();
+    }
+
+    @Test
+    void shouldDetectCanonicalNameWithoutResolving() {
+        // given
+        underTest.addDate(".*explicit.*", "2010-11-21");
+        Path canonical = root.resolve("2020-01").resolve("20200115-some-name.jpg");
+        Path otherParent = root.resolve("2020-02").resolve("20200115-some-name.jpg");
+        Path notPrepared = root.resolve("2020-01").resolve("20200115-Some name.jpg");
+        Path notPrefixed = root.resolve("2020-01").resolve("img-20200115.jpg");
+        Path unknown = root.resolve("2020-01").resolve("20200115-some-name.txt");
+        Path explicit = root.resolve("2020-01").resolve("20200115-explicit.jpg");
+
+        // then
+        assertThat(underTest.isCanonical(canonical)).isTrue();
+        assertThat(underTest.isCanonical(otherParent)).isFalse();
+        assertThat(underTest.isCanonical(notPrepared)).isFalse();
+        assertThat(underTest.isCanonical(notPrefixed)).isFalse();
+        assertThat(underTest.isCanonical(unknown)).isFalse();
+        assertThat(underTest.isCanonical(explicit)).isFalse();
+    }
+
     @Test
     void shouldResolveByDateFromParent() throws IOException {
         // given
@@ -148,4 +186,18 @@ class NameResolverTest {
         assertThat(underTest.buildUniquePath(existing)).isEqualTo(root.resolve("existing-20200101-test-0"));
         assertThat(underTest.buildUniquePath(other)).isEqualTo(root.resolve("other-20200101-test"));
     }
-}
\ No newline at end of file
+
+    @Test
+    void shouldResolveMissingPathByNameOnly() throws IOException {
+        // given
+        Path missing = root.resolve("Test--20200115.jPG");
+        doNothing().when(logger).infoStat(anyString(), eq(missing), any(), any());
+
+        // when
+        NameResolver.Result actual = underTest.resolve(missing);
+
+        // then
+        assertThat(actual).isEqualTo(new NameResolver.Result("2020-01", "20200115-test.jpg"));
+        assertThat(actual.getStatus()).isEqualTo("prefix date");
+    }
+}
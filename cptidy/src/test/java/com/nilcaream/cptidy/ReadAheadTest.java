@@ -0,0 +1,122 @@
+package com.nilcaream.cptidy;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class ReadAheadTest {
+
+    @InjectMocks
+    private ReadAhead underTest = new ReadAhead();
+
+    @Spy
+    private Logger logger = new Logger();
+
+    @Spy
+    private BufferPool bufferPool = new BufferPool();
+
+    private List<Path> toDelete = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() throws IOException {
+        for (Path path : toDelete) {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    void shouldReturnSameWalkIfDisabled() throws IOException {
+        // given
+        List<Path> paths = create(3);
+
+        // when
+        List<Path> actual = underTest.ahead(paths.stream()).collect(Collectors.toList());
+
+        // then
+        assertThat(actual).isEqualTo(paths);
+        assertThat(underTest.getFiles()).isZero();
+    }
+
+    @Test
+    void shouldKeepWalkOrder() throws IOException {
+        // given
+        List<Path> paths = create(10);
+        paths.add(paths.get(0).resolveSibling("not-existing"));
+        underTest.setDepth(3);
+        underTest.setBytes(3 * 1024);
+
+        // when
+        List<Path> actual = new ArrayList<>();
+        underTest.ahead(paths.stream()).forEach(path -> {
+            sleep();
+            actual.add(path);
+        });
+
+        // then
+        assertThat(actual).isEqualTo(paths);
+        assertThat(underTest.getFiles()).isBetween(1, 10);
+        assertThat(underTest.getBytesRead()).isLessThanOrEqualTo(10 * 1024);
+    }
+
+    @Test
+    void shouldStopReadingPreviousWalk() throws Exception {
+        // given
+        List<Path> paths = create(4);
+        underTest.setDepth(3);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            started.countDown();
+            release.await();
+            return invocation.callRealMethod();
+        }).when(bufferPool).acquire(anyInt());
+
+        // when
+        assertThat(underTest.ahead(paths.stream()).iterator().hasNext()).isTrue();
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        underTest.ahead(paths.stream());
+        release.countDown();
+
+        // then
+        verify(bufferPool, after(500).times(1)).acquire(anyInt());
+        assertThat(underTest.getBytesRead()).isZero();
+    }
+
+    private void sleep() {
+        try {
+            Thread.sleep(10);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private List<Path> create(int count) throws IOException {
+        List<Path> paths = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Path path = Files.createTempFile("cptidy-", ".tmp");
+            Files.write(path, new byte[64 * 1024]);
+            toDelete.add(path);
+            paths.add(path);
+        }
+        return paths;
+    }
+}
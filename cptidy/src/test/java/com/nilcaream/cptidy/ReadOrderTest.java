@@ -0,0 +1,91 @@
+package com.nilcaream.cptidy;
+
+import com.google.common.jimfs.Configuration;
+import com.google.common.jimfs.Jimfs;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class ReadOrderTest {
+
+    private Io io = new Io();
+
+    private Path root = Jimfs.newFileSystem(Configuration.unix()).getPath("unix").toAbsolutePath();
+
+    private List<Path> toDelete = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() throws IOException {
+        for (Path path : toDelete) {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    void shouldSortByDirectory() throws IOException {
+        // given
+        Path path1 = io.write(root.resolve("b").resolve("file-1"), "test");
+        Path path2 = io.write(root.resolve("a").resolve("file-2"), "test");
+        Path path3 = io.write(root.resolve("a").resolve("file-1"), "test");
+
+        // then
+        assertThat(ReadOrder.DIRECTORY.sort(List.of(path1, path2, path3))).containsExactly(path3, path2, path1);
+        assertThat(ReadOrder.NONE.sort(List.of(path1, path2, path3))).containsExactly(path1, path2, path3);
+    }
+
+    @Test
+    void shouldFallBackToDirectoryOrderWithoutInode() throws IOException {
+        // given
+        Path path1 = io.write(root.resolve("b").resolve("file-1"), "test");
+        Path path2 = io.write(root.resolve("a").resolve("file-1"), "test");
+        Path path3 = root.resolve("a").resolve("missing");
+
+        // then
+        assertThat(ReadOrder.INODE.sort(List.of(path1, path3, path2))).containsExactly(path2, path3, path1);
+    }
+
+    @Test
+    void shouldSortByInode() throws IOException {
+        // given
+        List<Path> paths = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            Path path = Files.createTempFile("cptidy-", ".tmp");
+            toDelete.add(path);
+            paths.add(0, path);
+        }
+        assumeTrue(String.valueOf(Files.readAttributes(paths.get(0), BasicFileAttributes.class).fileKey()).contains("ino="));
+
+        // when
+        List<Path> actual = ReadOrder.INODE.sort(paths);
+
+        // then
+        List<Path> expected = paths.stream().sorted(Comparator.comparingLong(this::inode)).collect(Collectors.toList());
+        assertThat(actual).isEqualTo(expected);
+    }
+
+    @Test
+    void shouldRejectUnknownOrder() {
+        assertThatThrownBy(() -> ReadOrder.of("random")).isInstanceOf(IllegalArgumentException.class).hasMessageContaining("inode");
+    }
+
+    private long inode(Path path) {
+        try {
+            String fileKey = String.valueOf(Files.readAttributes(path, BasicFileAttributes.class).fileKey());
+            return Long.parseLong(fileKey.replaceAll(".*ino=(\\d+).*", "$1"));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
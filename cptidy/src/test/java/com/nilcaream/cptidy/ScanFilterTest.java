@@ -0,0 +1,89 @@
+package com.nilcaream.cptidy;
+
+import com.google.common.jimfs.Configuration;
+import com.google.common.jimfs.Jimfs;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ScanFilterTest {
+
+    private ScanFilter underTest = new ScanFilter();
+
+    private Io io = new Io();
+
+    private Path root = Jimfs.newFileSystem(Configuration.unix()).getPath("unix").toAbsolutePath();
+
+    @Test
+    void shouldAcceptAllByDefault() {
+        // when
+        boolean accepted = underTest.accepts(root.resolve("file"), 0);
+        boolean pruned = underTest.isPruned(root.resolve(".git"));
+
+        // then
+        assertThat(underTest.isEnabled()).isFalse();
+        assertThat(accepted).isTrue();
+        assertThat(pruned).isFalse();
+    }
+
+    @Test
+    void shouldMatchNamesAndPaths() {
+        // given
+        underTest.setIncludes(List.of("*.jpg", "**/raw/*"));
+        underTest.setExcludes(List.of("thumb-*"));
+        underTest.setPrunes(List.of("node_modules", "**/vault/.cache"));
+
+        // then
+        assertThat(underTest.accepts(root.resolve("a").resolve("file.jpg"), 1)).isTrue();
+        assertThat(underTest.accepts(root.resolve("raw").resolve("file.cr2"), 1)).isTrue();
+        assertThat(underTest.accepts(root.resolve("a").resolve("file.cr2"), 1)).isFalse();
+        assertThat(underTest.accepts(root.resolve("a").resolve("thumb-file.jpg"), 1)).isFalse();
+        assertThat(underTest.isPruned(root.resolve("a").resolve("node_modules"))).isTrue();
+        assertThat(underTest.isPruned(root.resolve("vault").resolve(".cache"))).isTrue();
+        assertThat(underTest.isPruned(root.resolve("other").resolve(".cache"))).isFalse();
+    }
+
+    @Test
+    void shouldFilterByExtensionAndSize() {
+        // given
+        underTest.setExtensions(List.of("JPG", ".mp4"));
+        underTest.setMinSize(10);
+        underTest.setMaxSize(20);
+
+        // then
+        assertThat(underTest.accepts(root.resolve("file.jpg"), 10)).isTrue();
+        assertThat(underTest.accepts(root.resolve("file.MP4"), 20)).isTrue();
+        assertThat(underTest.accepts(root.resolve("file.jpg"), 9)).isFalse();
+        assertThat(underTest.accepts(root.resolve("file.jpg"), 21)).isFalse();
+        assertThat(underTest.accepts(root.resolve("file.png"), 15)).isFalse();
+        assertThat(underTest.accepts(root.resolve("jpg"), 15)).isFalse();
+    }
+
+    @Test
+    void shouldCountPassedRecords() throws IOException {
+        // given
+        Path file = io.write(root.resolve("file.jpg"), "test");
+        Path other = io.write(root.resolve("file.txt"), "test");
+        Path directory = io.write(root.resolve(".git").resolve("file"), "test").getParent();
+        underTest.setExtensions(List.of("jpg"));
+        underTest.setPrunes(List.of(".git"));
+
+        // when
+        boolean fileAccepted = underTest.passes(FileRecord.of(file));
+        boolean otherAccepted = underTest.passes(FileRecord.of(other));
+        boolean directoryAccepted = underTest.passes(FileRecord.of(directory));
+        boolean rootAccepted = underTest.passes(FileRecord.of(root));
+
+        // then
+        assertThat(fileAccepted).isTrue();
+        assertThat(otherAccepted).isFalse();
+        assertThat(directoryAccepted).isFalse();
+        assertThat(rootAccepted).isTrue();
+        assertThat(underTest.getSkippedFiles()).isEqualTo(1);
+        assertThat(underTest.getPrunedDirectories()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,144 @@
+package com.nilcaream.cptidy;
+
+import com.google.common.jimfs.Configuration;
+import com.google.common.jimfs.Jimfs;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StructureProbeTest {
+
+    private StructureProbe underTest = new StructureProbe();
+
+    private Io io = new Io();
+
+    private Path root = Jimfs.newFileSystem(Configuration.unix()).getPath("unix").toAbsolutePath();
+
+    @Test
+    void shouldAcceptValidJpeg() throws IOException {
+        // given
+        Path source = Paths.get("src", "test", "resources", "exif-original.jpg");
+
+        // when
+        StructureProbe.Result actual = underTest.probe(source);
+
+        // then
+        assertThat(actual.getStatus()).isEqualTo(StructureProbe.Status.OK);
+    }
+
+    @Test
+    void shouldDetectTruncatedJpeg() throws IOException {
+        // given
+        byte[] content = Files.readAllBytes(Paths.get("src", "test", "resources", "exif-original.jpg"));
+        Path path = io.write(root.resolve("truncated.jpg"), Arrays.copyOf(content, content.length / 2));
+
+        // when
+        StructureProbe.Result actual = underTest.probe(path);
+
+        // then
+        assertThat(actual.getStatus()).isEqualTo(StructureProbe.Status.SUSPICIOUS);
+        assertThat(actual.getReason()).contains("exceeds file length");
+    }
+
+    @Test
+    void shouldDetectJpegWithoutEndOfImage() throws IOException {
+        // given
+        byte[] content = Files.readAllBytes(Paths.get("src", "test", "resources", "exif-original.jpg"));
+        Path path = io.write(root.resolve("no-eoi.jpg"), Arrays.copyOf(content, content.length - 2));
+
+        // when
+        StructureProbe.Result actual = underTest.probe(path);
+
+        // then
+        assertThat(actual.getStatus()).isEqualTo(StructureProbe.Status.SUSPICIOUS);
+    }
+
+    @Test
+    void shouldAcceptValidMp4() throws IOException {
+        // given
+        Path path = io.write(root.resolve("video.mp4"), boxes(box("ftyp", 24), box("mdat", 10000), box("moov", 500)));
+
+        // when
+        StructureProbe.Result actual = underTest.probe(path);
+
+        // then
+        assertThat(actual.getStatus()).isEqualTo(StructureProbe.Status.OK);
+    }
+
+    @Test
+    void shouldDetectTruncatedMp4() throws IOException {
+        // given
+        byte[] content = boxes(box("ftyp", 24), box("mdat", 10000), box("moov", 500));
+        Path path = io.write(root.resolve("video.mp4"), Arrays.copyOf(content, 5000));
+
+        // when
+        StructureProbe.Result actual = underTest.probe(path);
+
+        // then
+        assertThat(actual.getStatus()).isEqualTo(StructureProbe.Status.SUSPICIOUS);
+        assertThat(actual.getReason()).isEqualTo("mdat box at 24 exceeds file length by 5024 bytes");
+    }
+
+    @Test
+    void shouldDetectMp4WithoutMoov() throws IOException {
+        // given
+        Path path = io.write(root.resolve("video.mp4"), boxes(box("ftyp", 24), box("mdat", 10000)));
+
+        // when
+        StructureProbe.Result actual = underTest.probe(path);
+
+        // then
+        assertThat(actual.getStatus()).isEqualTo(StructureProbe.Status.SUSPICIOUS);
+        assertThat(actual.getReason()).isEqualTo("no moov box");
+    }
+
+    @Test
+    void shouldDetectZerosAppendedToMp4() throws IOException {
+        // given
+        byte[] content = boxes(box("ftyp", 24), box("moov", 500), box("mdat", 10000));
+        Path path = io.write(root.resolve("video.mp4"), Arrays.copyOf(content, content.length + 8000));
+
+        // when
+        StructureProbe.Result actual = underTest.probe(path);
+
+        // then
+        assertThat(actual.getStatus()).isEqualTo(StructureProbe.Status.SUSPICIOUS);
+    }
+
+    @Test
+    void shouldNotRecognizeOtherFormats() throws IOException {
+        // given
+        Path path = io.write(root.resolve("file.txt"), "test");
+
+        // when
+        StructureProbe.Result actual = underTest.probe(path);
+
+        // then
+        assertThat(actual.getStatus()).isEqualTo(StructureProbe.Status.UNKNOWN);
+    }
+
+    private byte[] box(String type, int size) {
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(size).put(type.getBytes());
+        while (buffer.hasRemaining()) {
+            buffer.put((byte) 1);
+        }
+        return buffer.array();
+    }
+
+    private byte[] boxes(byte[]... boxes) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        for (byte[] box : boxes) {
+            output.write(box);
+        }
+        return output.toByteArray();
+    }
+}
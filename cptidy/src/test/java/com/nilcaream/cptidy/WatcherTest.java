@@ -0,0 +1,111 @@
+package com.nilcaream.cptidy;
+
+import com.google.common.jimfs.Configuration;
+import com.google.common.jimfs.Jimfs;
+import com.google.common.jimfs.WatchServiceConfiguration;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class WatcherTest {
+
+    @InjectMocks
+    private Watcher underTest = new Watcher();
+
+    @Spy
+    private Logger logger = new Logger();
+
+    @Spy
+    private FileScanner fileScanner = new FileScanner();
+
+    @Spy
+    private ScanFilter scanFilter = new ScanFilter();
+
+    private Io io = new Io();
+
+    private Path root = Jimfs.newFileSystem(Configuration.unix().toBuilder()
+            .setWatchServiceConfiguration(WatchServiceConfiguration.polling(10, MILLISECONDS))
+            .build()).getPath("unix").toAbsolutePath();
+
+    @Test
+    void shouldPassNewFilesOnceSettled() throws Exception {
+        // given
+        Files.createDirectories(root);
+        io.write(root.resolve("existing"), "test");
+        underTest.setSettle(200);
+        Map<Path, Long> actual = new ConcurrentHashMap<>();
+        Thread thread = new Thread(() -> {
+            try {
+                underTest.watch(List.of(root), path -> actual.put(path, System.currentTimeMillis()));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        // when
+        thread.start();
+        verify(logger, timeout(5000)).debug("watch", root);
+        long written = System.currentTimeMillis();
+        Path file = io.write(root.resolve("file"), "test");
+        Path nested = io.write(root.resolve("a").resolve("b").resolve("file"), "test");
+        long deadline = System.currentTimeMillis() + 10000;
+        while (actual.size() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        underTest.stop();
+        thread.join(10000);
+
+        // then
+        assertThat(actual.keySet()).containsExactlyInAnyOrder(file, nested);
+        assertThat(actual.values()).allMatch(passed -> passed - written >= 200);
+        assertThat(thread.isAlive()).isFalse();
+    }
+
+    @Test
+    void shouldRegisterRestOfTreeIfDirectoryFails() throws Exception {
+        // given
+        Path removed = Files.createDirectories(root.resolve("a"));
+        Path other = Files.createDirectories(root.resolve("b"));
+        FileRecord removedRecord = FileRecord.of(removed);
+        FileRecord otherRecord = FileRecord.of(other);
+        Files.delete(removed);
+        doReturn(Stream.of(removedRecord, otherRecord)).when(fileScanner).walk(root);
+        Thread thread = new Thread(() -> {
+            try {
+                underTest.watch(List.of(root), path -> {
+                });
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        // when
+        thread.start();
+        verify(logger, timeout(5000)).debug("watch", other);
+        underTest.stop();
+        thread.join(10000);
+
+        // then
+        verify(logger).error(eq("watch-error"), any(IOException.class), eq(removed));
+        assertThat(thread.isAlive()).isFalse();
+    }
+}
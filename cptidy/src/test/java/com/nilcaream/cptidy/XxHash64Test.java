@@ -0,0 +1,74 @@
+package com.nilcaream.cptidy;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class XxHash64Test {
+
+    private XxHash64 underTest = new XxHash64();
+
+    @ParameterizedTest
+    @CsvSource({
+            "'', ef46db3751d8e999",
+            "a, d24ec4f1a98c6e5b",
+            "abc, 44bc2cf5ad770999",
+            "Nobody inspects the spammish repetition, fbcea83c8a378bf1"
+    })
+    void shouldMatchReferenceValues(String input, String expected) {
+        // given
+        byte[] bytes = input.getBytes();
+
+        // when
+        underTest.update(bytes, 0, bytes.length);
+
+        // then
+        assertThat(String.format("%016x", new BigInteger(1, underTest.digest()))).isEqualTo(expected);
+    }
+
+    @ParameterizedTest
+    @CsvSource({"1", "7", "31", "32", "33", "100"})
+    void shouldNotDependOnChunkSize(int chunkSize) {
+        // given
+        byte[] bytes = new byte[1000];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (i * 31);
+        }
+        underTest.update(bytes, 0, bytes.length);
+        byte[] expected = underTest.digest();
+
+        // when
+        for (int i = 0; i < bytes.length; i += chunkSize) {
+            underTest.update(bytes, i, Math.min(chunkSize, bytes.length - i));
+        }
+
+        // then
+        assertThat(underTest.digest()).isEqualTo(expected);
+    }
+
+    @ParameterizedTest
+    @CsvSource({"1", "7", "31", "32", "33", "100"})
+    void shouldHashDirectBuffer(int chunkSize) {
+        // given
+        byte[] bytes = new byte[1000];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (i * 17);
+        }
+        underTest.update(bytes, 0, bytes.length);
+        byte[] expected = underTest.digest();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+
+        // when
+        for (int i = 0; i < bytes.length; i += chunkSize) {
+            underTest.update(buffer.limit(Math.min(i + chunkSize, bytes.length)));
+        }
+
+        // then
+        assertThat(buffer.position()).isEqualTo(bytes.length);
+        assertThat(underTest.digest()).isEqualTo(expected);
+    }
+}
@@ -0,0 +1,108 @@
+package com.nilcaream.cptidy;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ExtendWith(MockitoExtension.class)
+class ZeroScannerTest {
+
+    @InjectMocks
+    private ZeroScanner underTest = new ZeroScanner();
+
+    @Spy
+    private Logger logger = new Logger();
+
+    private Io io = new Io();
+
+    @Test
+    void shouldMergeConsecutiveZeroBlocksIntoRuns() throws IOException {
+        // given
+        Path path = Files.createTempFile("cptidy-", ".tmp");
+        io.write(path, new byte[]{
+                0, 0, 0, 0,
+                0, 0, 0, 0,
+                2, 2, 2, 2,
+                0, 0, 0, 0,
+                0, 0
+        });
+
+        // when
+        ZeroScanner.Result actual = underTest.scan(path, 4);
+
+        // then
+        assertThat(actual.getSize()).isEqualTo(18);
+        assertThat(actual.getBlocks()).isEqualTo(4);
+        assertThat(actual.getZeroBytes()).isEqualTo(14);
+        assertThat(actual.getRuns()).containsExactly(new long[]{0, 8}, new long[]{12, 6});
+        assertThat(actual.formatRuns(16)).isEqualTo("0:8 12:6");
+        assertThat(actual.formatRuns(1)).isEqualTo("0:8 and 1 more");
+    }
+
+    @Test
+    void shouldNotFindZeroBlocks() throws IOException {
+        // given
+        Path path = Files.createTempFile("cptidy-", ".tmp");
+        io.write(path, new byte[]{
+                0, 0, 0, 1,
+                1, 0, 0, 0
+        });
+
+        // when
+        ZeroScanner.Result actual = underTest.scan(path, 4);
+
+        // then
+        assertThat(actual.getBlocks()).isEqualTo(0);
+        assertThat(actual.getRuns()).isEmpty();
+        assertThat(actual.formatRuns(16)).isEmpty();
+    }
+
+    @Test
+    void shouldScanEmptyFile() throws IOException {
+        // given
+        Path path = Files.createTempFile("cptidy-", ".tmp");
+
+        // when
+        ZeroScanner.Result actual = underTest.scan(path, 4);
+
+        // then
+        assertThat(actual.getSize()).isEqualTo(0);
+        assertThat(actual.getBlocks()).isEqualTo(0);
+    }
+
+    @Test
+    void shouldScanFilesInParallel() throws IOException {
+        // given
+        underTest.setThreads(3);
+        Map<Path, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 10; i++) {
+            byte[] content = new byte[4 * 10];
+            for (int block = i; block < 10; block++) {
+                content[block * 4] = 1;
+            }
+            Path path = Files.createTempFile("cptidy-", ".tmp");
+            io.write(path, content);
+            expected.put(path, i);
+        }
+        Path missing = Files.createTempFile("cptidy-", ".tmp");
+        Files.delete(missing);
+        Map<Path, Integer> actual = new HashMap<>();
+
+        // when
+        underTest.scan(Stream.concat(expected.keySet().stream(), Stream.of(missing)), 4, (path, result) -> actual.put(path, result.getBlocks()));
+
+        // then
+        assertThat(actual).isEqualTo(expected);
+    }
+}